@@ -0,0 +1,146 @@
+package com.istat.freedev.processor;
+
+/**
+ * {@link AdmissionController} which adapt its concurrency limit to the observed process latency, using a gradient algorithm:
+ * the latency of recent completions (short term) is compared to a long term baseline. While the short term latency stay
+ * within the tolerance of the baseline, the limit grow by about sqrt(limit); when it increase further, the limit shrink
+ * proportionally.
+ * <p>
+ * Latency is measured from {@link Process#getStartingTime()} to {@link Process#getFinishTime()} of process which succeed or
+ * end in error or failure, so time spent pending is not part of it. Use {@link #getLimit()} and {@link #getPendingCount()}
+ * to follow the limit convergence.
+ */
+public class AdaptiveAdmissionController extends AdmissionController {
+    public final static int DEFAULT_INITIAL_LIMIT = 20, DEFAULT_MIN_LIMIT = 1, DEFAULT_MAX_LIMIT = 1000;
+    public final static int DEFAULT_SAMPLE_WINDOW = 10, DEFAULT_LONG_WINDOW = 600;
+    public final static double DEFAULT_TOLERANCE = 1.5, DEFAULT_SMOOTHING = 0.2;
+    final int minLimit, maxLimit;
+    int sampleWindow = DEFAULT_SAMPLE_WINDOW;
+    int longWindow = DEFAULT_LONG_WINDOW;
+    double tolerance = DEFAULT_TOLERANCE;
+    double smoothing = DEFAULT_SMOOTHING;
+    double estimatedLimit;
+    double longLatency = -1;
+    long sampleLatencySum = 0;
+    int sampleCount = 0;
+    int maxInFlight = 0;
+    volatile double lastShortLatency = -1;
+
+    public AdaptiveAdmissionController() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, Integer.MAX_VALUE, OverflowPolicy.REJECT);
+    }
+
+    /**
+     * @param initialLimit   limit used until enough latency has been observed
+     * @param minLimit       the limit never go under this value
+     * @param maxLimit       the limit never go over this value
+     * @param queueCapacity  max number of process waiting for admission
+     * @param overflowPolicy what to do when a process is submitted while the pending queue is full
+     */
+    public AdaptiveAdmissionController(int initialLimit, int minLimit, int maxLimit, int queueCapacity, OverflowPolicy overflowPolicy) {
+        super(initialLimit, queueCapacity, overflowPolicy);
+        if (minLimit <= 0 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("limits must satisfy 0 < minLimit <= initialLimit <= maxLimit, given min=" + minLimit + ", initial=" + initialLimit + ", max=" + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    /**
+     * @param sampleWindow number of completion averaged into one short term latency sample
+     */
+    public void setSampleWindow(int sampleWindow) {
+        this.sampleWindow = Math.max(1, sampleWindow);
+    }
+
+    /**
+     * @param longWindow number of short term samples the long term latency average span
+     */
+    public void setLongWindow(int longWindow) {
+        this.longWindow = Math.max(1, longWindow);
+    }
+
+    /**
+     * @param tolerance how much the short term latency may exceed the long term one before the limit shrink (>= 1).
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = Math.max(1, tolerance);
+    }
+
+    /**
+     * @param smoothing weight (0, 1] of each new estimation into the limit.
+     */
+    public void setSmoothing(double smoothing) {
+        this.smoothing = Math.min(1, Math.max(0.01, smoothing));
+    }
+
+    public int getLimit() {
+        return getMaxConcurrency();
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * @return long term (baseline) latency in millis, -1 if not yet measured.
+     */
+    public double getLongTermLatency() {
+        lock.lock();
+        try {
+            return longLatency;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return latency of the last short term sample in millis, -1 if not yet measured.
+     */
+    public double getShortTermLatency() {
+        return lastShortLatency;
+    }
+
+    @Override
+    void onProcessReleased(Process process) {
+        maxInFlight = Math.max(maxInFlight, activeCount + 1);
+        int state = process.getState();
+        if (process.getStartingTime() < 0 || process.getFinishTime() < 0 ||
+                (state != Process.STATE_SUCCESS && state != Process.STATE_ERROR && state != Process.STATE_FAILED)) {
+            return;
+        }
+        sampleLatencySum += Math.max(0, process.getFinishTime() - process.getStartingTime());
+        if (++sampleCount < sampleWindow) {
+            return;
+        }
+        //+1 avoid a zero gradient for process completing inside the same millisecond.
+        double shortLatency = (double) sampleLatencySum / sampleCount + 1;
+        int inFlight = maxInFlight;
+        sampleLatencySum = 0;
+        sampleCount = 0;
+        maxInFlight = 0;
+        lastShortLatency = shortLatency - 1;
+        if (longLatency < 0 || shortLatency < longLatency) {
+            longLatency = shortLatency;
+        } else if (shortLatency <= tolerance * longLatency || estimatedLimit <= minLimit) {
+            //the baseline only follow latency while it is healthy, or when the limit can't shrink anymore
+            //(lasting downstream slowdown), otherwise it would chase the latency it is meant to bound.
+            longLatency += (shortLatency - longLatency) / longWindow;
+        }
+        double limit = estimatedLimit;
+        if (inFlight < limit / 2) {
+            //the limit is not reached, it can't be validated nor invalidated.
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longLatency / shortLatency));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        maxConcurrency = (int) estimatedLimit;
+    }
+}
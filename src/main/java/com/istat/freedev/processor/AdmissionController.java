@@ -0,0 +1,346 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bound the number of process a {@link ProcessManager} run at the same time.
+ * Process submitted while the limit is reached wait inside a bounded pending queue, with the state {@link Process#STATE_PENDING}.
+ * When the pending queue is full, the {@link OverflowPolicy} decide what happen to the submitted process.
+ * <p>
+ * An AdmissionController is attached to one manager through {@link ProcessManager#setAdmissionController(AdmissionController)}.
+ * A process is bound to the controller which took it, running or pending, until it finish.
+ */
+public class AdmissionController {
+    public final static long DEFAULT_BLOCK_TIMEOUT = 5000;
+
+    public enum OverflowPolicy {
+        /**
+         * the submitted process fail with a {@link ProcessManager.ProcessException}.
+         */
+        REJECT,
+        /**
+         * the submitted process body is run directly on the submitter thread, over the limit.
+         */
+        CALLER_RUNS,
+        /**
+         * the oldest pending process is dropped ({@link Process#STATE_DROPPED}) to make room for the submitted one.
+         */
+        DROP_OLDEST,
+        /**
+         * the submitter wait for room in the pending queue, at most {@link #getBlockTimeout()} millis, then is rejected.
+         */
+        BLOCK
+    }
+
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition roomAvailable = lock.newCondition();
+    final ArrayDeque<Entry> pendingQueue = new ArrayDeque<>();
+    final AtomicLong rejectedCount = new AtomicLong(), droppedCount = new AtomicLong();
+    final int queueCapacity;
+    final OverflowPolicy overflowPolicy;
+    volatile int maxConcurrency;
+    volatile long blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+    int activeCount = 0;
+
+    public AdmissionController(int maxConcurrency) {
+        this(maxConcurrency, Integer.MAX_VALUE, OverflowPolicy.REJECT);
+    }
+
+    /**
+     * @param maxConcurrency max number of process running at the same time
+     * @param queueCapacity  max number of process waiting for admission
+     * @param overflowPolicy what to do when a process is submitted while the pending queue is full
+     */
+    public AdmissionController(int maxConcurrency, int queueCapacity, OverflowPolicy overflowPolicy) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0, given=" + maxConcurrency);
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("queueCapacity can't be negative, given=" + queueCapacity);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy != null ? overflowPolicy : OverflowPolicy.REJECT;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * update the concurrency limit. Raising it admit pending process right away.
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0, given=" + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        drain();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getBlockTimeout() {
+        return blockTimeout;
+    }
+
+    public void setBlockTimeout(long blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    public int getActiveCount() {
+        lock.lock();
+        try {
+            return activeCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pendingQueue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * run the given task with the given engine if the limit allow it, otherwise enqueue it or apply the overflow policy.
+     *
+     * @throws ProcessManager.ProcessException if the process has been rejected.
+     */
+    void admit(Process process, Runnable task, ExecutionEngine engine) throws ProcessManager.ProcessException {
+        Entry dropped = null;
+        boolean runNow = false, runInline = false;
+        lock.lock();
+        try {
+            if (activeCount < maxConcurrency) {
+                activeCount++;
+                process.admission = this;
+                runNow = true;
+            } else if (pendingQueue.size() < queueCapacity) {
+                pendingQueue.add(new Entry(process, task, engine));
+                process.admission = this;
+            } else {
+                switch (overflowPolicy) {
+                    case CALLER_RUNS:
+                        activeCount++;
+                        process.admission = this;
+                        runInline = true;
+                        break;
+                    case DROP_OLDEST:
+                        dropped = pendingQueue.poll();
+                        if (dropped == null) {
+                            throw reject(process);
+                        }
+                        dropped.process.admission = null;
+                        pendingQueue.add(new Entry(process, task, engine));
+                        process.admission = this;
+                        droppedCount.incrementAndGet();
+                        break;
+                    case BLOCK:
+                        awaitRoom(process);
+                        if (activeCount < maxConcurrency) {
+                            activeCount++;
+                            process.admission = this;
+                            runNow = true;
+                        } else {
+                            pendingQueue.add(new Entry(process, task, engine));
+                            process.admission = this;
+                        }
+                        break;
+                    default:
+                        throw reject(process);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (dropped != null) {
+            dropped.process.notifyDropped();
+        }
+        if (runInline) {
+            task.run();
+        } else if (runNow) {
+            engine.execute(task, process.getPriority());
+        }
+    }
+
+    private void awaitRoom(Process process) throws ProcessManager.ProcessException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+        try {
+            while (activeCount >= maxConcurrency && pendingQueue.size() >= queueCapacity) {
+                if (remaining <= 0) {
+                    throw reject(process);
+                }
+                remaining = roomAvailable.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedCount.incrementAndGet();
+            throw new ProcessManager.ProcessException(e);
+        }
+    }
+
+    private ProcessManager.ProcessException reject(Process process) {
+        rejectedCount.incrementAndGet();
+        return new ProcessManager.ProcessException("Sorry, process with PID=" + process.getId() + " rejected: " +
+                activeCount + " process running and " + pendingQueue.size() + " pending.");
+    }
+
+    /**
+     * called when a process bound to this controller finish, release its slot or remove it from the pending queue,
+     * then admit pending process.
+     */
+    void onProcessFinished(Process process) {
+        lock.lock();
+        try {
+            if (process.admission != this) {
+                //handed over to another controller meanwhile.
+                return;
+            }
+            process.admission = null;
+            if (!removePending(process)) {
+                activeCount--;
+                onProcessReleased(process);
+            }
+        } finally {
+            lock.unlock();
+        }
+        drain();
+    }
+
+    /**
+     * must be called with the lock held.
+     *
+     * @return true if the process was pending, false if it was admitted.
+     */
+    private boolean removePending(Process process) {
+        Iterator<Entry> iterator = pendingQueue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().process == process) {
+                iterator.remove();
+                roomAvailable.signal();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * hand the pending process over to the controller replacing this one, or run them if there is none. Admitted
+     * process stay bound to this controller, which still admit process blocked into it when they finish.
+     *
+     * @param next the new controller of the manager, null if it doesn't have one anymore.
+     */
+    void handOverPending(AdmissionController next) {
+        List<Entry> pending;
+        lock.lock();
+        try {
+            pending = new ArrayList<>(pendingQueue);
+            pendingQueue.clear();
+            for (Entry entry : pending) {
+                entry.process.admission = null;
+            }
+            roomAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (next != null) {
+            next.adopt(pending);
+        } else {
+            for (Entry entry : pending) {
+                entry.engine.execute(entry.task, entry.process.getPriority());
+            }
+        }
+    }
+
+    /**
+     * enqueue process handed over by a previous controller, over the queue capacity if needed: they were already
+     * accepted. A process which finished during the hand over is skipped.
+     */
+    private void adopt(List<Entry> pending) {
+        lock.lock();
+        try {
+            for (Entry entry : pending) {
+                //bound before checking it is still running: a process finishing meanwhile then find this controller.
+                entry.process.admission = this;
+                if (entry.process.isRunning()) {
+                    pendingQueue.add(entry);
+                } else {
+                    entry.process.admission = null;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        drain();
+    }
+
+    /**
+     * called, with the controller lock held, when an admitted process release its slot.
+     * Subclasses can update {@link #maxConcurrency} from here.
+     */
+    void onProcessReleased(Process process) {
+
+    }
+
+    /**
+     * admit as many pending process as the limit allow.
+     */
+    void drain() {
+        while (true) {
+            Entry entry;
+            lock.lock();
+            try {
+                if (activeCount >= maxConcurrency || (entry = pendingQueue.poll()) == null) {
+                    roomAvailable.signalAll();
+                    return;
+                }
+                activeCount++;
+                entry.process.admission = this;
+                roomAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+            entry.engine.execute(entry.task, entry.process.getPriority());
+        }
+    }
+
+    final static class Entry {
+        final Process process;
+        final Runnable task;
+        final ExecutionEngine engine;
+
+        Entry(Process process, Runnable task, ExecutionEngine engine) {
+            this.process = process;
+            this.task = task;
+            this.engine = engine;
+        }
+    }
+}
@@ -1,15 +1,21 @@
 package com.istat.freedev.processor;
 
 import com.istat.freedev.processor.interfaces.ProcessCallback;
+import com.istat.freedev.processor.interfaces.PublishCallback;
+import com.istat.freedev.processor.utils.HashedWheelTimer;
 import com.istat.freedev.processor.utils.ProcessTools;
 import com.istat.freedev.processor.utils.ToolKits;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Created by istat on 04/10/16.
@@ -17,9 +23,23 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 
 public abstract class Process<Result, Error extends Throwable> {
     public final static int FLAG_DETACHED = 1;
+    /**
+     * keep callbacks and promises of the process once its final notifications have been delivered, so they run again
+     * if the process is executed again. Ignored by pooled process, see {@link ProcessPool}.
+     */
     public final static int FLAG_DONT_CLEAR_ON_FINISH = 2;
     public final static int FLAG_NOT_CANCELABLE = 4;
+    /**
+     * the process block inside {@link #onExecute(ExecutionVariables)}, run it with {@link com.istat.freedev.processor.interfaces.ExecutionEngine#THREAD_PER_PROCESS}
+     */
+    public final static int FLAG_BLOCKING = 8;
+    public final static int PRIORITY_LOW = 0, PRIORITY_NORMAL = 1, PRIORITY_HIGH = 2;
+    /**
+     * how values given to {@link #publish(Object)} are delivered: only the latest one, or all of them by batch.
+     */
+    public final static int PUBLISH_MODE_CONFLATE = 0, PUBLISH_MODE_BATCH = 1;
     int flags;
+    int priority = PRIORITY_NORMAL;
     public final static int
             STATE_IDLE = -1,
             STATE_STARTED = 7,
@@ -35,14 +55,157 @@ public abstract class Process<Result, Error extends Throwable> {
     Error error;
     Throwable exception;
     String id;
+    long serialId = -1;
     final ConcurrentHashMap<PromiseCallback, Runnable> promiseRunnableMap = new ConcurrentHashMap<>();
-    final ConcurrentLinkedQueue<ProcessCallback<Result, Error>> processCallbacks = new ConcurrentLinkedQueue();
-    private long startingTime = -1, finishTime = -1;
-    private Object[] executionVariableArray = new Object[0];
-    ProcessManager manager;
-    int state = STATE_IDLE;
-    boolean canceled = false;
-    boolean running = false;
+    private final static ProcessCallback[] NO_CALLBACKS = new ProcessCallback[0];
+    /**
+     * copy-on-write array of callbacks, so it is iterated without allocation on each notification.
+     */
+    volatile ProcessCallback<Result, Error>[] processCallbacks = NO_CALLBACKS;
+    private final static AtomicReferenceFieldUpdater<Process, ProcessCallback[]> CALLBACKS_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Process.class, ProcessCallback[].class, "processCallbacks");
+    private long enqueueTime = -1, startingTime = -1, finishTime = -1;
+    private volatile ProcessVariables variables = ProcessVariables.EMPTY;
+    private final ExecutionVariables executionVariables = new ExecutionVariables();
+    volatile ProcessManager manager;
+    final ProcessStrand strand = new ProcessStrand(this);
+    volatile AdmissionController admission;
+    volatile ProcessGroup group;
+    long timeout = 0;
+    volatile RetryPolicy retryPolicy;
+    volatile int attemptCount = 0;
+    volatile HashedWheelTimer.Timeout deadline;
+    volatile ProcessPool pool;
+    /**
+     * number of times the process has been recycled by its pool.
+     */
+    volatile int generation = 0;
+    /**
+     * count of caller side steps of the process in progress, see {@link #holdRecycle(int)}. {@link #RECYCLE_PENDING} is
+     * set when the process has to be recycled once they are done, {@link #RECYCLING} while it is recycled.
+     */
+    volatile int recycleHolds = 0;
+    private final static int RECYCLE_PENDING = 1 << 29, RECYCLING = 1 << 30;
+    private final static AtomicIntegerFieldUpdater<Process> RECYCLE_HOLDS_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(Process.class, "recycleHolds");
+    /**
+     * whether or not the final notifications of the last execution have been delivered.
+     */
+    volatile boolean finishDelivered = false;
+    final PublishChannel publishChannel = new PublishChannel();
+    /**
+     * lifecycle word: the state in the high 32 bits, LIFECYCLE_* flags in the low ones.
+     * Every transition is a CAS on it, so a process terminate exactly once whatever the threads racing on it.
+     */
+    volatile long lifecycle = lifecycle(STATE_IDLE, 0);
+    final static long LIFECYCLE_RUNNING = 1, LIFECYCLE_CANCELED = 2, LIFECYCLE_TERMINATING = 4, LIFECYCLE_TIMED_OUT = 8,
+            LIFECYCLE_RESERVED = 16;
+    private final static AtomicLongFieldUpdater<Process> LIFECYCLE_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Process.class, "lifecycle");
+    /**
+     * released when the process terminate, created by the first waiter only.
+     */
+    volatile CountDownLatch completion;
+    private final static AtomicReferenceFieldUpdater<Process, CountDownLatch> COMPLETION_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Process.class, CountDownLatch.class, "completion");
+
+    static long lifecycle(int state, long flags) {
+        return ((long) state << 32) | flags;
+    }
+
+    static int stateOf(long lifecycle) {
+        return (int) (lifecycle >> 32);
+    }
+
+    private boolean casLifecycle(long expected, long update) {
+        return LIFECYCLE_UPDATER.compareAndSet(this, expected, update);
+    }
+
+    /**
+     * mark a process being registered into its manager, until {@link #enqueue(ProcessManager)} make it running: its id
+     * slot is not taken over nor cleaned meanwhile, see {@link #isAlive()}.
+     */
+    final void reserve() {
+        while (true) {
+            long current = lifecycle;
+            if (casLifecycle(current, current | LIFECYCLE_RESERVED)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * release the reservation of a process which won't be enqueued, its registration failed.
+     */
+    final void unReserve() {
+        while (true) {
+            long current = lifecycle;
+            if ((current & LIFECYCLE_RESERVED) == 0 || casLifecycle(current, current & ~LIFECYCLE_RESERVED)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if the process is running, or registered and about to be enqueued.
+     */
+    final boolean isAlive() {
+        return (lifecycle & (LIFECYCLE_RUNNING | LIFECYCLE_RESERVED)) != 0;
+    }
+
+    /**
+     * update the state of a running process which is not terminating.
+     */
+    private boolean changeState(int state) {
+        while (true) {
+            long current = lifecycle;
+            if ((current & LIFECYCLE_RUNNING) == 0 || (current & LIFECYCLE_TERMINATING) != 0) {
+                return false;
+            }
+            if (casLifecycle(current, lifecycle(state, current & 0xFFFFFFFFL))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * claim the termination of the process, only one caller can succeed. The winner has to call {@link #terminate(int)}.
+     *
+     * @param allowCanceled whether or not a canceled process can be terminated by the caller.
+     */
+    private boolean claimTermination(boolean allowCanceled) {
+        while (true) {
+            long current = lifecycle;
+            if ((current & LIFECYCLE_RUNNING) == 0 || (current & LIFECYCLE_TERMINATING) != 0
+                    || (!allowCanceled && (current & LIFECYCLE_CANCELED) != 0)) {
+                return false;
+            }
+            if (casLifecycle(current, current | LIFECYCLE_TERMINATING)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * set the final state of the process, which is not running anymore. Its canceled flag is kept.
+     */
+    private void terminate(int state) {
+        while (true) {
+            long current = lifecycle;
+            if (casLifecycle(current, lifecycle(state, current & (LIFECYCLE_CANCELED | LIFECYCLE_TIMED_OUT)))) {
+                CountDownLatch completion = this.completion;
+                if (completion != null) {
+                    completion.countDown();
+                }
+                HashedWheelTimer.Timeout deadline = this.deadline;
+                if (deadline != null) {
+                    this.deadline = null;
+                    deadline.cancel();
+                }
+                return;
+            }
+        }
+    }
 
     public ProcessManager getManager() {
         return manager;
@@ -70,9 +233,128 @@ public abstract class Process<Result, Error extends Throwable> {
         return flags;
     }
 
+    /**
+     * define how urgent are the execution and the notifications of this process, for dispatchers and engines which order
+     * by priority, like {@link com.istat.freedev.processor.utils.PriorityDispatcher}.
+     *
+     * @param priority between {@link #PRIORITY_LOW} and {@link #PRIORITY_HIGH}
+     */
+    public void setPriority(int priority) {
+        if (isRunning()) {
+            throw new IllegalStateException("Process is already started");
+        }
+        if (priority < PRIORITY_LOW || priority > PRIORITY_HIGH) {
+            throw new IllegalArgumentException("priority must be between " + PRIORITY_LOW + " and " + PRIORITY_HIGH + ", given=" + priority);
+        }
+        this.priority = priority;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * define the max time this process can run, counted from its submission to its manager. Once expired, the process
+     * is canceled ({@link #onCancel()} then {@link #STATE_ABORTED}) and {@link #hasTimedOut()} return true.
+     * A process flagged {@link #FLAG_NOT_CANCELABLE} is never aborted by its timeout.
+     *
+     * @param timeout max running time in millis, 0 to use the default one of its {@link Processor}.
+     */
+    public void setTimeout(long timeout) {
+        if (isRunning()) {
+            throw new IllegalStateException("Process is already started");
+        }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout can't be negative, given=" + timeout);
+        }
+        this.timeout = timeout;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * define how the process is executed again when it end with {@link #STATE_ERROR} or {@link #STATE_FAILED}.
+     *
+     * @param retryPolicy the policy, null to never retry.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @return number of executions of the process since its submission, retries included.
+     */
+    public int getAttemptCount() {
+        return attemptCount;
+    }
+
+    /**
+     * @return true if the process has been aborted because its timeout expired.
+     */
+    public boolean hasTimedOut() {
+        return (lifecycle & LIFECYCLE_TIMED_OUT) != 0;
+    }
+
+    /**
+     * @return the group this process has been executed in, see {@link ProcessGroup#execute(Process, Object...)}, or null.
+     * A process keep its group when executed again.
+     */
+    public ProcessGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * @param publishMode {@link #PUBLISH_MODE_CONFLATE}, the default, or {@link #PUBLISH_MODE_BATCH}. Batched values
+     *                    are all kept until delivered: a process publishing faster than its dispatcher deliver, or
+     *                    than the interval allow, grows its batch without bound, it has to be conflated then.
+     * @param interval    min time between two deliveries of published values, in millis. 0 to deliver them as soon
+     *                    as the dispatcher can.
+     * @see #publish(Object)
+     */
+    public void setPublishMode(int publishMode, long interval) {
+        if (isRunning()) {
+            throw new IllegalStateException("Process is already started");
+        }
+        if (publishMode != PUBLISH_MODE_CONFLATE && publishMode != PUBLISH_MODE_BATCH) {
+            throw new IllegalArgumentException("publishMode must be PUBLISH_MODE_CONFLATE or PUBLISH_MODE_BATCH, given=" + publishMode);
+        }
+        if (interval < 0) {
+            throw new IllegalArgumentException("interval can't be negative, given=" + interval);
+        }
+        publishChannel.mode = publishMode;
+        publishChannel.interval = interval;
+    }
+
+    public int getPublishMode() {
+        return publishChannel.mode;
+    }
+
+    public <T> void addPublishCallback(PublishCallback<T> callback) {
+        if (callback != null) {
+            publishChannel.addCallback(callback);
+        }
+    }
+
+    public boolean removePublishCallback(PublishCallback callback) {
+        return callback != null && publishChannel.removeCallback(callback);
+    }
+
     public void addCallback(ProcessCallback<Result, Error> executionListener) {
-        if (executionListener != null && executionListener != null) {
-            this.processCallbacks.add(executionListener);
+        if (executionListener != null) {
+            while (true) {
+                ProcessCallback[] current = processCallbacks;
+                ProcessCallback[] updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = executionListener;
+                if (CALLBACKS_UPDATER.compareAndSet(this, current, updated)) {
+                    return;
+                }
+            }
         }
     }
 
@@ -80,47 +362,86 @@ public abstract class Process<Result, Error extends Throwable> {
         if (executionListener == null) {
             return false;
         }
-        return this.processCallbacks.remove(executionListener);
+        while (true) {
+            ProcessCallback[] current = processCallbacks;
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].equals(executionListener)) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return false;
+            }
+            ProcessCallback[] updated = current.length == 1 ? NO_CALLBACKS : new ProcessCallback[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            if (CALLBACKS_UPDATER.compareAndSet(this, current, updated)) {
+                return true;
+            }
+        }
     }
 
     public void removeCallbacks() {
-        this.processCallbacks.clear();
+        this.processCallbacks = NO_CALLBACKS;
     }
 
+    /**
+     * @return a view of the variables of the process, the same instance on each call.
+     */
     public ExecutionVariables getExecutionVariables() {
-        return new ExecutionVariables();
+        return executionVariables;
     }
 
     public <T> T getExecutionVariable(int index) {
         return getExecutionVariables().getVariable(index);
     }
 
+    final void enqueue(ProcessManager manager) {
+        this.manager = manager;
+        this.enqueueTime = System.currentTimeMillis();
+        this.completion = null;
+        this.attemptCount = 0;
+        this.finishDelivered = false;
+        //promises kept from a previous execution, see FLAG_DONT_CLEAR_ON_FINISH, run again.
+        promiseTable.resetExecuted();
+        this.lifecycle = lifecycle(STATE_PENDING, LIFECYCLE_RUNNING);
+    }
+
     final void execute(ProcessManager manager, Object... vars) {
         this.manager = manager;
         jeopardise = false;
+        holdRecycle(generation);
         try {
-            this.executionVariableArray = vars;
+            this.variables = ProcessVariables.of(vars);
+            attemptCount++;
             startingTime = System.currentTimeMillis();
 //            memoryRunnableTask.putAll(runnableTask);
             notifyStarted();
             onExecute(getExecutionVariables());
-            if (running) {
+            if (isRunning()) {
                 notifyStateChanged(STATE_PROCESSING, false);
             }
         } catch (Exception e) {
             notifyFailed(e);
+        } finally {
+            releaseRecycle();
         }
     }
 
     final void reset() {
         jeopardise = false;
-        executedRunnable.clear();
+        promiseTable.resetExecuted();
 //        runnableTask.putAll(memoryRunnableTask);
+        holdRecycle(generation);
         try {
             onExecute(getExecutionVariables());
         } catch (Exception e) {
             notifyStarted();
             notifyFailed(e);
+        } finally {
+            releaseRecycle();
         }
     }
 
@@ -147,7 +468,7 @@ public abstract class Process<Result, Error extends Throwable> {
     }
 
     public boolean isRunning() {
-        return running;
+        return (lifecycle & LIFECYCLE_RUNNING) != 0;
     }
 
     /**
@@ -156,7 +477,9 @@ public abstract class Process<Result, Error extends Throwable> {
      * @return
      */
     public boolean isCompleted() {
-        return !running && !canceled && (state == STATE_SUCCESS || exception != null || error != null);
+        long lifecycle = this.lifecycle;
+        return (lifecycle & (LIFECYCLE_RUNNING | LIFECYCLE_CANCELED)) == 0
+                && (stateOf(lifecycle) == STATE_SUCCESS || exception != null || error != null);
     }
 
     /**
@@ -165,7 +488,9 @@ public abstract class Process<Result, Error extends Throwable> {
      * @return
      */
     public boolean isFinished() {
-        return !running && (result != null ||
+        long lifecycle = this.lifecycle;
+        int state = stateOf(lifecycle);
+        return (lifecycle & LIFECYCLE_RUNNING) == 0 && (result != null ||
                 exception != null ||
                 error != null ||
                 state == STATE_SUCCESS ||
@@ -178,7 +503,7 @@ public abstract class Process<Result, Error extends Throwable> {
     }
 
     public boolean isCanceled() {
-        return canceled;
+        return (lifecycle & LIFECYCLE_CANCELED) != 0;
     }
 
     protected void onRestart(int mode) {
@@ -220,14 +545,13 @@ public abstract class Process<Result, Error extends Throwable> {
         return getResult(allowAwaitResult, throwException, null);
     }
 
+    /**
+     * @param runningVerificationInterval ignored: the calling thread is woken up as soon as the process terminate,
+     *                                    see {@link #await()}.
+     */
     public Result getResult(boolean allowAwaitResult, boolean throwException, Long runningVerificationInterval) throws Throwable {
-        if (runningVerificationInterval == null) {
-            runningVerificationInterval = 500L;
-        }
         if (allowAwaitResult) {
-            while (isRunning()) {
-                Thread.sleep(runningVerificationInterval);
-            }
+            await();
         }
         if (throwException && exception != null) {
             throw exception;
@@ -239,6 +563,54 @@ public abstract class Process<Result, Error extends Throwable> {
         return result;
     }
 
+    /**
+     * wait for the process to terminate, without polling: the calling thread is parked until the process reach its
+     * final state. Return immediately if the process is not running.
+     * Don't call it from the dispatcher thread of a process which still has notifications to deliver before terminating.
+     */
+    public void await() throws InterruptedException {
+        CountDownLatch completion = getCompletion();
+        if (completion != null) {
+            completion.await();
+        }
+    }
+
+    /**
+     * @param timeout max time to wait, in millis
+     * @return true if the process is not running anymore.
+     * @see #await()
+     */
+    public boolean await(long timeout) throws InterruptedException {
+        CountDownLatch completion = getCompletion();
+        return completion == null || completion.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the latch released when the process terminate, null if it is not running.
+     */
+    private CountDownLatch getCompletion() {
+        if (!isRunning()) {
+            return null;
+        }
+        CountDownLatch completion = this.completion;
+        if (completion == null) {
+            COMPLETION_UPDATER.compareAndSet(this, null, new CountDownLatch(1));
+            completion = this.completion;
+        }
+        //the process may have terminated before seeing the latch.
+        return isRunning() ? completion : null;
+    }
+
+    /**
+     * @return a {@link Future} view of this process: {@link Future#get()} return its result once it succeed, throw an
+     * {@link java.util.concurrent.ExecutionException} if it failed and a {@link java.util.concurrent.CancellationException}
+     * if it has been canceled. For a process of a {@link ProcessPool}, it throw an {@link IllegalStateException} once the
+     * process has been recycled.
+     */
+    public Future<Result> asFuture() {
+        return new ProcessFuture<>(this);
+    }
+
     public <T> T getResultAs(Class<T> cLass) {
         if (result != null) {
             if (cLass.isAssignableFrom(result.getClass())) {
@@ -275,6 +647,13 @@ public abstract class Process<Result, Error extends Throwable> {
         this.id = id;
     }
 
+    /**
+     * @return a compact id, unique inside the manager which run the process, given at each submission. -1 if never submitted.
+     */
+    public final long getSerialId() {
+        return serialId;
+    }
+
     public final void pause() {
         onPaused();
     }
@@ -284,7 +663,7 @@ public abstract class Process<Result, Error extends Throwable> {
     }
 
     public void doHotSwapping(Object... payload) {
-        executionVariableArray = payload;
+        variables = ProcessVariables.of(payload);
         onHotSwapping(getExecutionVariables());
     }
 
@@ -310,7 +689,7 @@ public abstract class Process<Result, Error extends Throwable> {
 //                execute(Process.getManager(), executionVars);
                 reset();
             }
-        }, TIME_MILLISEC_WAIT_FOR_RESTART);
+        }, TIME_MILLISEC_WAIT_FOR_RESTART, priority);
 
     }
 
@@ -320,20 +699,59 @@ public abstract class Process<Result, Error extends Throwable> {
     }
 
     public final boolean cancel() {
+        return cancel(0);
+    }
+
+    /**
+     * called, from its manager dispatcher, when the timeout of the process expired.
+     */
+    final void timeOut() {
+        cancel(LIFECYCLE_TIMED_OUT);
+    }
+
+    private boolean cancel(long cancelFlags) {
         if ((flags & FLAG_NOT_CANCELABLE) == FLAG_NOT_CANCELABLE) {
             return false;
         }
+        if (!holdRecycle(generation)) {
+            //recycled meanwhile: the process doesn't belong to the caller anymore.
+            return false;
+        }
         try {
-            if (running) {
-                canceled = true;
+            boolean aborted = markCanceled(cancelFlags);
+            if (aborted) {
                 onCancel();
                 notifyAborted();
+                if (jeopardise) {
+                    //a jeopardised process is not notified: just stop it.
+                    terminate(getState());
+                }
+            }
+            //callbacks waiting for a final notification, the abortion or the termination which won the race, are
+            //cleared once it is delivered, see onFinishDelivered().
+            if (pool == null && (jeopardise || (!aborted && (finishDelivered || getState() == STATE_IDLE)))) {
+                removeCallbacks();
             }
-            this.running = false;
-            this.processCallbacks.clear();
             return true;
         } catch (Exception e) {
             return false;
+        } finally {
+            releaseRecycle();
+        }
+    }
+
+    /**
+     * flag a running process which is not terminating as canceled.
+     */
+    private boolean markCanceled(long cancelFlags) {
+        while (true) {
+            long current = lifecycle;
+            if ((current & LIFECYCLE_RUNNING) == 0 || (current & LIFECYCLE_TERMINATING) != 0) {
+                return false;
+            }
+            if (casLifecycle(current, current | LIFECYCLE_CANCELED | cancelFlags)) {
+                return true;
+            }
         }
     }
 
@@ -349,15 +767,7 @@ public abstract class Process<Result, Error extends Throwable> {
             when = new int[]{STATE_ABORTED, STATE_FLAG_FINISHED, STATE_ERROR, STATE_FAILED, STATE_STARTED, STATE_SUCCESS};
         }
         for (int i : when) {
-            if (runnableTask.containsKey(i)) {
-                try {
-                    runnableTask.get(i).clear();
-                } catch (Exception e) {
-
-                } finally {
-                    runnableTask.remove(i);
-                }
-            }
+            promiseTable.clear(i);
         }
         return running;
     }
@@ -382,9 +792,7 @@ public abstract class Process<Result, Error extends Throwable> {
     }
 
 
-    final ConcurrentLinkedQueue<Runnable> executedRunnable = new ConcurrentLinkedQueue<Runnable>();
-    //    final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Runnable>> memoryRunnableTask = new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Runnable>>();
-    final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Runnable>> runnableTask = new ConcurrentHashMap();
+    final PromiseTable promiseTable = new PromiseTable();
 
     public <T extends Process> T promise(final PromiseCallback<T> callback, int... when) {
         if (callback != null) {
@@ -410,17 +818,17 @@ public abstract class Process<Result, Error extends Throwable> {
         if (runnable == null) {
             return (T) this;
         }
-        if (isCompleted()) {
+        //a process whose final notifications are still pending run the promise from its lane, after them.
+        if (isCompleted() && finishDelivered) {
             for (int time : when) {
-                if (time == STATE_FLAG_FINISHED || state == time) {
+                if (time == STATE_FLAG_FINISHED || getState() == time) {
                     runnable.run();
                 }
             }
             return (T) this;
         }
-        for (int value : when) {
-            addPromise(runnable, value);
-        }
+        //states the runnable is already registered for are skipped.
+        addPromise(runnable, when);
         return (T) this;
     }
 
@@ -434,7 +842,7 @@ public abstract class Process<Result, Error extends Throwable> {
                 promise.onPromise(getResult());
             }
         };
-        if (hasSucceed()) {
+        if (hasSucceed() && finishDelivered) {
 //            throw new IllegalStateException("Oups, current Process is not running. It has to be running before adding any promise or promise");
             runnable.run();
             return (T) this;
@@ -453,7 +861,7 @@ public abstract class Process<Result, Error extends Throwable> {
                 promise.onPromise(getError());
             }
         };
-        if (hasError()) {
+        if (hasError() && finishDelivered) {
 //            throw new IllegalStateException("Oups, current Process is not running. It has to be running before adding any promise or promise");
             runnable.run();
             return (T) this;
@@ -472,7 +880,7 @@ public abstract class Process<Result, Error extends Throwable> {
                 promise.onPromise(getFailCause());
             }
         };
-        if (hasException()) {
+        if (hasException() && finishDelivered) {
 //            throw new IllegalStateException("Oups, current Process is not running. It has to be running before adding any promise or promise");
             runnable.run();
             return (T) this;
@@ -495,13 +903,12 @@ public abstract class Process<Result, Error extends Throwable> {
                 promise.onPromise(error);
             }
         };
-        if (hasError() || hasException()) {
+        if ((hasError() || hasException()) && finishDelivered) {
 //            throw new IllegalStateException("Oups, current Process is not running. It has to be running before adding any promise or promise");
             runnable.run();
             return (T) this;
         }
-        addPromise(runnable, STATE_FAILED);
-        addPromise(runnable, STATE_ERROR);
+        addPromise(runnable, STATE_FAILED, STATE_ERROR);
 //        addFuture(runnable, STATE_ABORTED);
         return (T) this;
     }
@@ -513,7 +920,7 @@ public abstract class Process<Result, Error extends Throwable> {
                 promise.onPromise(null);
             }
         };
-        if (isCanceled()) {
+        if (isCanceled() && finishDelivered) {
 //            throw new IllegalStateException("Oups, current Process is not running. It has to be running before adding any promise or promise");
             runnable.run();
             return (T) this;
@@ -532,7 +939,7 @@ public abstract class Process<Result, Error extends Throwable> {
                 promise.onPromise(Process.this);
             }
         };
-        if (isFinished()) {
+        if (isFinished() && finishDelivered) {
 //            throw new IllegalStateException("Oups, current Process is not running. It has to be running before adding any promise or promise");
             runnable.run();
             return (T) this;
@@ -545,7 +952,8 @@ public abstract class Process<Result, Error extends Throwable> {
         return then(new PromiseCallback<Result>() {
             @Override
             public void onPromise(Result data) {
-                promise.execute(manager, data);
+                //submitted like any process, so it is enqueued, admitted and notified.
+                strand.manager.execute(promise, data);
             }
         });
     }
@@ -576,25 +984,42 @@ public abstract class Process<Result, Error extends Throwable> {
         return (T) this;
     }
 
-    private void addPromise(Runnable runnable, int conditionTime) {
-//        synchronized (this) {
-        if (!isPromiseContains(runnable, conditionTime)) {
-            ConcurrentLinkedQueue<Runnable> runnableList = runnableTask.get(conditionTime);
-            if (runnableList == null) {
-                runnableList = new ConcurrentLinkedQueue();
+    private void addPromise(Runnable runnable, int... conditionTimes) {
+        final PromiseTable.Entry entry = promiseTable.add(runnable, conditionTimes);
+        int state = getState();
+        if (!isRunning() && state != STATE_IDLE) {
+            //the process terminated while the promise was registered: its delivery may have missed it.
+            for (int conditionTime : conditionTimes) {
+                if (conditionTime == state || conditionTime == STATE_FLAG_FINISHED) {
+                    postLatePromise(entry);
+                    return;
+                }
             }
-            runnableList.add(runnable);
-            runnableTask.put(conditionTime, runnableList);
         }
-//        }
     }
 
-    private boolean isPromiseContains(Runnable run, int conditionTime) {
-        ConcurrentLinkedQueue<Runnable> runnableList = runnableTask.get(conditionTime);
-        if (runnableList == null || runnableList.isEmpty()) {
-            return false;
-        }
-        return runnableList.contains(run);
+    /**
+     * run, from the lane of the process, a promise registered while the process was terminating, unless its final
+     * delivery already ran it. Posted after that delivery, it keep the delivery order and thread of the other promises.
+     */
+    private void postLatePromise(final PromiseTable.Entry entry) {
+        final long serialId = this.serialId;
+        strand.post(new Runnable() {
+            @Override
+            public void run() {
+                //a pending delivery will run the entry itself, a process executed again doesn't run it anymore.
+                if (!jeopardise && finishDelivered && serialId == Process.this.serialId && entry.markExecuted(PromiseTable.Entry.PHASE_FINISHED)) {
+                    entry.runnable.run();
+                }
+            }
+        }, strand.manager);
+    }
+
+    /**
+     * @return time at which the process has been submitted to its manager.
+     */
+    public final long getEnqueueTime() {
+        return enqueueTime;
     }
 
     public final long getStartingTime() {
@@ -618,14 +1043,12 @@ public abstract class Process<Result, Error extends Throwable> {
         return System.currentTimeMillis() - startingTime;
     }
 
-    private void executePromises(ConcurrentLinkedQueue<Runnable> runnableList) {
-        if (!jeopardise && runnableList != null && runnableList.size() > 0) {
-            for (Runnable runnable : runnableList) {
-                if (!executedRunnable.contains(runnable)) {
-                    runnable.run();
-                    executedRunnable.add(runnable);
-                }
-            }
+    /**
+     * @param finished whether or not the state is a final one.
+     */
+    private void executePromises(int state, boolean finished) {
+        if (!jeopardise) {
+            promiseTable.execute(state, finished ? PromiseTable.Entry.PHASE_FINISHED : PromiseTable.Entry.PHASE_RUNNING);
         }
     }
 
@@ -650,75 +1073,179 @@ public abstract class Process<Result, Error extends Throwable> {
     }
 
     final void notifyStarted() {
-        if (!jeopardise) {
-            Process.this.state = STATE_STARTED;
-            this.running = true;
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    if (getManager() != null) {
-                        getManager().notifyProcessStarted(Process.this/*, getExecutionVariables().asArray()*/);
-                    }
-                    for (ProcessCallback<Result, Error> executionListener : processCallbacks) {
-                        executionListener.onStart(/*Process.this*/);
-                    }
-                    ConcurrentLinkedQueue<Runnable> runnableList = runnableTask.get(STATE_STARTED);
-                    executePromises(runnableList);
-                    onStateChanged(state);
-                    onStarted();
-                }
-            });
+        if (!jeopardise && changeState(STATE_STARTED)) {
+            postNotification(obtainNotification(NOTIFICATION_STARTED));
+        }
+    }
 
+    private void deliverStarted() {
+        if (getManager() != null) {
+            getManager().notifyProcessStarted(Process.this/*, getExecutionVariables().asArray()*/);
         }
+        for (ProcessCallback<Result, Error> executionListener : processCallbacks) {
+            executionListener.onStart(/*Process.this*/);
+        }
+        executePromises(STATE_STARTED, false);
+        onStateChanged(STATE_STARTED);
+        onStarted();
     }
 
     final void notifyFinished(int state) {
         if (!jeopardise) {
-            this.state = state;
-            this.running = false;
+            //values published before the termination are delivered before it.
+            publishChannel.deliver();
+            this.finishTime = System.currentTimeMillis();
             if (getManager() != null) {
                 getManager().notifyProcessFinished(this);
             }
             for (ProcessCallback<Result, Error> executionListener : processCallbacks) {
                 executionListener.onFinished(/*this, this.result,*/ state);
             }
-            executedRunnable.clear();
-            ConcurrentLinkedQueue<Runnable> runnableList = runnableTask.get(STATE_FLAG_FINISHED);
-            executePromises(runnableList);
+            executePromises(STATE_FLAG_FINISHED, true);
             onStateChanged(state);
-            this.finishTime = System.currentTimeMillis();
             onFinished(state, result, error);
-            if ((flags & FLAG_DONT_CLEAR_ON_FINISH) == FLAG_DONT_CLEAR_ON_FINISH) {
-                removeCallbacks();
-                runnableTask.clear();
-                promiseRunnableMap.clear();
-            }
             this.manager = null;
         }
     }
 
+    /**
+     * called, from the dispatcher, once every final notification of the process has been delivered.
+     * Clear its callbacks and promises unless {@link #FLAG_DONT_CLEAR_ON_FINISH} is set, then give it back to its pool.
+     */
+    private void onFinishDelivered() {
+        if (jeopardise) {
+            return;
+        }
+        finishDelivered = true;
+        //pending values have been delivered with the termination, a delayed delivery is obsolete.
+        ProcessManager manager = strand.manager;
+        if (manager != null) {
+            manager.unPost(publishTrigger);
+        }
+        ProcessPool pool = this.pool;
+        if (pool != null || (flags & FLAG_DONT_CLEAR_ON_FINISH) != FLAG_DONT_CLEAR_ON_FINISH) {
+            removeCallbacks();
+            publishChannel.removeCallbacks();
+            promiseTable.clear();
+            promiseRunnableMap.clear();
+        }
+        if (pool != null) {
+            while (true) {
+                int holds = recycleHolds;
+                if (holds == 0) {
+                    if (RECYCLE_HOLDS_UPDATER.compareAndSet(this, 0, RECYCLING)) {
+                        giveBackToPool();
+                        return;
+                    }
+                } else if (RECYCLE_HOLDS_UPDATER.compareAndSet(this, holds, holds | RECYCLE_PENDING)) {
+                    //recycled by the last caller side step, see releaseRecycle().
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * prevent the process from being recycled while a caller side step, as {@link #cancel()} or
+     * {@link #onExecute(ExecutionVariables)}, still use it: its final delivery can run meanwhile on another thread,
+     * or inline on an immediate dispatcher. Each successful hold has to be released by {@link #releaseRecycle()}.
+     *
+     * @param generation generation of the process seen by the caller.
+     * @return false if the process is being or has been recycled since the given generation.
+     */
+    private boolean holdRecycle(int generation) {
+        int holds = RECYCLE_HOLDS_UPDATER.incrementAndGet(this);
+        if ((holds & RECYCLING) != 0 || generation != this.generation) {
+            releaseRecycle();
+            return false;
+        }
+        return true;
+    }
+
+    private void releaseRecycle() {
+        if (RECYCLE_HOLDS_UPDATER.decrementAndGet(this) == RECYCLE_PENDING
+                && RECYCLE_HOLDS_UPDATER.compareAndSet(this, RECYCLE_PENDING, RECYCLING)) {
+            giveBackToPool();
+        }
+    }
+
+    /**
+     * recycle the process, which is flagged {@link #RECYCLING}, and give it back to its pool.
+     */
+    private void giveBackToPool() {
+        ProcessPool pool = this.pool;
+        recycle();
+        RECYCLE_HOLDS_UPDATER.addAndGet(this, -RECYCLING);
+        pool.recycle(this);
+    }
+
+    /**
+     * reset the process so it can be acquired again from its pool.
+     */
+    private void recycle() {
+        onRecycle();
+        this.generation++;
+        this.pool = null;
+        this.result = null;
+        this.error = null;
+        this.exception = null;
+        this.id = null;
+        this.serialId = -1;
+        this.enqueueTime = this.startingTime = this.finishTime = -1;
+        this.variables = ProcessVariables.EMPTY;
+        publishChannel.reset();
+        this.manager = null;
+        this.admission = null;
+        this.group = null;
+        this.timeout = 0;
+        this.retryPolicy = null;
+        this.attemptCount = 0;
+        this.deadline = null;
+        this.completion = null;
+        this.finishDelivered = false;
+        this.flags = 0;
+        this.priority = PRIORITY_NORMAL;
+        this.lifecycle = lifecycle(STATE_IDLE, 0);
+    }
+
+    /**
+     * called before a pooled process is reset and given back to its {@link ProcessPool}, release here any state kept
+     * by the subclass.
+     */
+    protected void onRecycle() {
+
+    }
+
     protected final void notifySucceed() {
         notifySucceed(null);
     }
 
     protected final void notifySucceed(final Result result) {
-        if (!jeopardise && running && !canceled) {
-            this.state = STATE_SUCCESS;
+        if (!jeopardise && claimTermination(false)) {
             this.result = result;
-            this.running = false;
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    notifyFinished(STATE_SUCCESS);
-                    for (ProcessCallback<Result, Error> executionListener : processCallbacks) {
-                        executionListener.onSuccess(/*Process.this,*/ result);
-                    }
-                    ConcurrentLinkedQueue<Runnable> runnableList = runnableTask.get(STATE_SUCCESS);
-                    executePromises(runnableList);
-                    onStateChanged(state);
-                    onSucceed(result);
-                }
-            });
+            terminate(STATE_SUCCESS);
+            postNotification(obtainNotification(NOTIFICATION_SUCCESS));
+        }
+    }
+
+    private void deliverSucceed() {
+        notifyFinished(STATE_SUCCESS);
+        for (ProcessCallback<Result, Error> executionListener : processCallbacks) {
+            executionListener.onSuccess(/*Process.this,*/ result);
+        }
+        executePromises(STATE_SUCCESS, true);
+        onStateChanged(STATE_SUCCESS);
+        onSucceed(result);
+        onFinishDelivered();
+    }
+
+    /**
+     * called when a pending process has been dropped from its manager before being executed.
+     */
+    final void notifyDropped() {
+        if (!jeopardise && claimTermination(true)) {
+            terminate(STATE_DROPPED);
+            postNotification(obtainNotification(NOTIFICATION_DROPPED));
         }
     }
 
@@ -726,27 +1253,32 @@ public abstract class Process<Result, Error extends Throwable> {
         notifyStateChanged(state, false);
     }
 
-    //TODO il serait telement cool de pouvoir fair transiter un PayLoad ici.
+    /**
+     * to report a progress or a partial result along with the state, see {@link #publish(Object)}.
+     */
     protected final void notifyStateChanged(final int state, final boolean finished) {
-        if (!jeopardise && running) {
-            this.state = state;
+        if (!jeopardise && (finished ? claimTermination(true) : changeState(state))) {
             if (finished) {
-                this.running = false;
+                terminate(state);
             }
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    if (getManager() != null) {
-                        getManager().notifyProcessStateChanged(Process.this);
-                    }
-                    if (finished) {
-                        notifyFinished(state);
-                    }
-                    ConcurrentLinkedQueue<Runnable> runnableList = runnableTask.get(state);
-                    executePromises(runnableList);
-                    onStateChanged(state);
-                }
-            });
+            Notification notification = obtainNotification(NOTIFICATION_STATE_CHANGED);
+            notification.state = state;
+            notification.finished = finished;
+            postNotification(notification);
+        }
+    }
+
+    private void deliverStateChanged(int state, boolean finished) {
+        if (getManager() != null) {
+            getManager().notifyProcessStateChanged(Process.this);
+        }
+        if (finished) {
+            notifyFinished(state);
+        }
+        executePromises(state, finished);
+        onStateChanged(state);
+        if (finished) {
+            onFinishDelivered();
         }
     }
 
@@ -754,73 +1286,147 @@ public abstract class Process<Result, Error extends Throwable> {
 
     }
 
+    /**
+     * publish a progress or a partial result of the running process to its {@link PublishCallback}.
+     * Values are delivered from the dispatcher, in order, according to the publish mode of the process, see
+     * {@link #setPublishMode(int, long)}: publishing faster than they are delivered doesn't post more runnables,
+     * values are conflated or batched meanwhile. Values published before the process terminate are delivered before
+     * its termination.
+     *
+     * @return false if the process is not running.
+     */
+    protected final boolean publish(Object value) {
+        ProcessManager manager = getManager();
+        if (jeopardise || !isRunning() || manager == null) {
+            return false;
+        }
+        if (publishChannel.offer(value)) {
+            long delay = publishChannel.getDeliveryDelay();
+            if (delay > 0) {
+                manager.postDelayed(publishTrigger, delay, priority);
+            } else {
+                postNotification(obtainNotification(NOTIFICATION_PUBLISHED));
+            }
+        }
+        return true;
+    }
+
+    private final Runnable publishTrigger = new Runnable() {
+        @Override
+        public void run() {
+            //scheduled by a publish racing the termination, which delivered its value.
+            if (isRunning()) {
+                postNotification(obtainNotification(NOTIFICATION_PUBLISHED));
+            }
+        }
+    };
+
+    /**
+     * called, instead of the failure callbacks, when a failed attempt is going to be retried.
+     *
+     * @param attempt number of executions already done
+     * @param cause   the error or exception of the failed attempt
+     * @param delay   time before the next attempt, in millis
+     */
+    protected void onRetry(int attempt, Throwable cause, long delay) {
+
+    }
+
+    /**
+     * put a process which claimed its termination back to pending and schedule its next attempt, if its retry policy
+     * and its manager retry budget allow it.
+     */
+    private boolean retry(final Throwable cause) {
+        final RetryPolicy retryPolicy = this.retryPolicy;
+        final ProcessManager manager = getManager();
+        final int attempt = attemptCount;
+        if (retryPolicy == null || manager == null || attempt == 0 || !retryPolicy.shouldRetry(this, cause, attempt)
+                || !manager.tryAcquireRetry()) {
+            return false;
+        }
+        final long delay = retryPolicy.getDelay(attempt);
+        while (true) {
+            long current = lifecycle;
+            if (casLifecycle(current, lifecycle(STATE_PENDING, LIFECYCLE_RUNNING))) {
+                break;
+            }
+        }
+        Notification notification = obtainNotification(NOTIFICATION_RETRY);
+        notification.attempt = attempt;
+        notification.cause = cause;
+        notification.delay = delay;
+        strand.post(notification, manager);
+        manager.retry(this, variables, delay);
+        return true;
+    }
+
     protected final void notifyError(final Error error) {
-        if (!jeopardise && running && !canceled) {
-            this.state = STATE_ERROR;
+        if (!jeopardise && claimTermination(false)) {
+            if (retry(error)) {
+                return;
+            }
             this.error = error;
-            this.running = false;
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    notifyFinished(STATE_ERROR);
-                    for (ProcessCallback<Result, Error> executionListener : processCallbacks) {
-                        executionListener.onError(/*Process.this, */error);
-                    }
-                    ConcurrentLinkedQueue<Runnable> runnableList = runnableTask.get(STATE_ERROR);
-                    executePromises(runnableList);
-                    onStateChanged(state);
-                    onError(error);
-                }
-            });
+            terminate(STATE_ERROR);
+            postNotification(obtainNotification(NOTIFICATION_ERROR));
+        }
+    }
+
+    private void deliverError() {
+        notifyFinished(STATE_ERROR);
+        for (ProcessCallback<Result, Error> executionListener : processCallbacks) {
+            executionListener.onError(/*Process.this, */error);
         }
+        executePromises(STATE_ERROR, true);
+        onStateChanged(STATE_ERROR);
+        onError(error);
+        onFinishDelivered();
     }
 
     protected final void notifyFailed(final Throwable e) {
-        if (!jeopardise && running && !canceled) {
-            this.state = STATE_FAILED;
+        if (!jeopardise && claimTermination(false)) {
+            if (retry(e)) {
+                return;
+            }
             this.exception = e;
-            this.running = false;
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    notifyFinished(STATE_FAILED);
-                    for (ProcessCallback<Result, Error> executionListener : processCallbacks) {
-                        executionListener.onFail(/*Process.this,*/ e);
-                    }
-                    ConcurrentLinkedQueue<Runnable> runnableList = runnableTask.get(STATE_FAILED);
-                    executePromises(runnableList);
-                    onStateChanged(state);
-                    onFailed(e);
-                }
-            });
+            terminate(STATE_FAILED);
+            postNotification(obtainNotification(NOTIFICATION_FAILED));
+        }
+    }
+
+    private void deliverFailed() {
+        notifyFinished(STATE_FAILED);
+        for (ProcessCallback<Result, Error> executionListener : processCallbacks) {
+            executionListener.onFail(/*Process.this,*/ exception);
         }
+        executePromises(STATE_FAILED, true);
+        onStateChanged(STATE_FAILED);
+        onFailed(exception);
+        onFinishDelivered();
     }
 
     protected final void notifyAborted() {
-        if (!jeopardise && running) {
-            this.state = STATE_ABORTED;
-            this.running = false;
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    notifyFinished(STATE_ABORTED);
-                    for (ProcessCallback<Result, Error> executionListener : processCallbacks) {
-                        executionListener.onAborted(/*Process.this*/);
-                    }
-                    ConcurrentLinkedQueue<Runnable> runnableList = runnableTask.get(STATE_ABORTED);
-                    executePromises(runnableList);
-                    onStateChanged(state);
-                    onAborted();
-                }
-            });
+        if (!jeopardise && claimTermination(true)) {
+            terminate(STATE_ABORTED);
+            postNotification(obtainNotification(NOTIFICATION_ABORTED));
+        }
+    }
+
+    private void deliverAborted() {
+        notifyFinished(STATE_ABORTED);
+        for (ProcessCallback<Result, Error> executionListener : processCallbacks) {
+            executionListener.onAborted(/*Process.this*/);
         }
+        executePromises(STATE_ABORTED, true);
+        onStateChanged(STATE_ABORTED);
+        onAborted();
+        onFinishDelivered();
     }
 
     protected final void notifyDelayedAborted(int delay) {
         if (delay <= 0) {
             notifyAborted();
         } else {
-            manager.postDelayed(new Runnable() {
+            postDelayed(new Runnable() {
                 @Override
                 public void run() {
                     notifyAborted();
@@ -833,7 +1439,7 @@ public abstract class Process<Result, Error extends Throwable> {
         if (delay <= 0) {
             notifyFailed(e);
         } else {
-            manager.postDelayed(new Runnable() {
+            postDelayed(new Runnable() {
                 @Override
                 public void run() {
                     notifyFailed(e);
@@ -846,7 +1452,7 @@ public abstract class Process<Result, Error extends Throwable> {
         if (delay <= 0) {
             notifyError(error);
         } else {
-            manager.postDelayed(new Runnable() {
+            postDelayed(new Runnable() {
                 @Override
                 public void run() {
                     notifyError(error);
@@ -859,7 +1465,7 @@ public abstract class Process<Result, Error extends Throwable> {
         if (delay <= 0) {
             notifySucceed(result);
         } else {
-            manager.postDelayed(new Runnable() {
+            postDelayed(new Runnable() {
                 @Override
                 public void run() {
                     notifySucceed(result);
@@ -889,33 +1495,15 @@ public abstract class Process<Result, Error extends Throwable> {
     }
 
     public int cancelAllCallback() {
-        int callbackCount = processCallbacks.size();
-        processCallbacks.clear();
-        return callbackCount;
+        return CALLBACKS_UPDATER.getAndSet(this, NO_CALLBACKS).length;
     }
 
     public boolean cancelCallback(ProcessCallback callback) {
-        boolean removed = processCallbacks.contains(callback);
-        if (removed) {
-            processCallbacks.remove(callback);
-        }
-        return removed;
+        return removeCallback(callback);
     }
 
     public boolean compromise(Runnable runnable) {
-        Iterator<Integer> iterator = runnableTask.keySet().iterator();
-        while (iterator.hasNext()) {
-            Integer when = iterator.next();
-            ConcurrentLinkedQueue<Runnable> runnables = runnableTask.get(when);
-            if (runnables != null) {
-                boolean removed = runnables.contains(runnable);
-                if (removed) {
-                    runnables.remove(runnable);
-                    return true;
-                }
-            }
-        }
-        return false;
+        return promiseTable.remove(runnable);
     }
 
     public boolean compromise(PromiseCallback promiseCallback) {
@@ -929,14 +1517,7 @@ public abstract class Process<Result, Error extends Throwable> {
     public void precipitatePromise(int... moments) {
         try {
             for (int moment : moments) {
-                ConcurrentLinkedQueue<Runnable> executableFuture = runnableTask.get(moment);
-                if (executableFuture != null && !executableFuture.isEmpty()) {
-                    for (Runnable runnable : executableFuture) {
-                        if (!executedRunnable.contains(runnable)) {
-                            runnable.run();
-                        }
-                    }
-                }
+                promiseTable.precipitate(moment);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -959,25 +1540,38 @@ public abstract class Process<Result, Error extends Throwable> {
         }
     }
 
+    /**
+     * view of the variables the process has been executed with, see {@link ProcessVariables}.
+     * Typed getters read primitive variables as they are, and convert the other ones.
+     */
     public class ExecutionVariables {
         public int getCount() {
-            return executionVariableArray.length;
+            return variables.getCount();
         }
 
         public Object[] asArray() {
-            return executionVariableArray;
+            return variables.toArray();
         }
 
         public List<?> asList() {
-            return Arrays.asList(executionVariableArray);
+            return Arrays.asList(asArray());
+        }
+
+        /**
+         * @return the variables of the current execution of the process. They are replaced on each execution, so
+         * the returned instance must not be kept beyond it.
+         */
+        public ProcessVariables getVariables() {
+            return variables;
         }
 
         public <T> T getVariable(int index) {
-            if (executionVariableArray.length <= index) {
+            ProcessVariables variables = Process.this.variables;
+            if (variables.getCount() <= index) {
                 return null;
             }
             try {
-                return (T) executionVariableArray[index];
+                return (T) variables.get(index);
             } catch (Exception e) {
                 e.printStackTrace();
                 return null;
@@ -985,12 +1579,13 @@ public abstract class Process<Result, Error extends Throwable> {
         }
 
         public boolean isVariableDefined(int index) {
-            return executionVariableArray.length > index;
+            return variables.getCount() > index;
         }
 
         public boolean isVariableNotNull(int index) {
-            if (executionVariableArray.length > index) {
-                return executionVariableArray[index] != null;
+            ProcessVariables variables = Process.this.variables;
+            if (variables.getCount() > index) {
+                return variables.isPrimitive(index) || variables.get(index) != null;
             }
             return false;
         }
@@ -1001,11 +1596,7 @@ public abstract class Process<Result, Error extends Throwable> {
         }
 
         public <T> T getVariable(int index, Class<T> cLass) throws ArrayIndexOutOfBoundsException {
-            if (executionVariableArray.length <= index) {
-                throw new ArrayIndexOutOfBoundsException("executionVariables length=" + executionVariableArray.length + ", requested index=" + index
-                );
-            }
-            Object var = executionVariableArray[index];
+            Object var = variables.get(index);
             if (var == null) {
                 return null;
             }
@@ -1017,11 +1608,7 @@ public abstract class Process<Result, Error extends Throwable> {
         }
 
         public <T> T getVariable(int index, Class<T> cLass, T defaultValue) throws ArrayIndexOutOfBoundsException {
-            if (executionVariableArray.length <= index) {
-                throw new ArrayIndexOutOfBoundsException("executionVariables length=" + executionVariableArray.length + ", requested index=" + index
-                );
-            }
-            Object var = executionVariableArray[index];
+            Object var = variables.get(index);
             if (var == null) {
                 return defaultValue;
             }
@@ -1033,11 +1620,7 @@ public abstract class Process<Result, Error extends Throwable> {
         }
 
         public String getStringVariable(int index) throws ArrayIndexOutOfBoundsException {
-            if (executionVariableArray.length <= index) {
-                throw new ArrayIndexOutOfBoundsException("executionVariables length=" + executionVariableArray.length + ", requested index=" + index
-                );
-            }
-            Object var = executionVariableArray[index];
+            Object var = variables.get(index);
             if (var == null) {
                 return null;
             }
@@ -1045,55 +1628,23 @@ public abstract class Process<Result, Error extends Throwable> {
         }
 
         public int getIntVariable(int index) throws ArrayIndexOutOfBoundsException {
-            if (executionVariableArray.length <= index) {
-                throw new ArrayIndexOutOfBoundsException("executionVariables length=" + executionVariableArray.length + ", requested index=" + index
-                );
-            }
-            Object var = executionVariableArray[index];
-            if (var == null) {
-                return 0;
-            }
-            return Integer.valueOf(String.valueOf(var));
+            return variables.getInt(index);
         }
 
         public long getLongVariable(int index) throws ArrayIndexOutOfBoundsException {
-            if (executionVariableArray.length <= index) {
-                throw new ArrayIndexOutOfBoundsException("executionVariables length=" + executionVariableArray.length + ", requested index=" + index
-                );
-            }
-            Object var = executionVariableArray[index];
-            if (var == null) {
-                return 0;
-            }
-            return Long.valueOf(String.valueOf(var));
+            return variables.getLong(index);
         }
 
         public float getFloatVariable(int index) throws ArrayIndexOutOfBoundsException {
-            if (executionVariableArray.length <= index) {
-                throw new ArrayIndexOutOfBoundsException("executionVariables length=" + executionVariableArray.length + ", requested index=" + index
-                );
-            }
-            Object var = executionVariableArray[index];
-            if (var == null) {
-                return 0;
-            }
-            return Float.valueOf(String.valueOf(var));
+            return variables.getFloat(index);
         }
 
         public double getDoubleVariable(int index) throws ArrayIndexOutOfBoundsException {
-            if (executionVariableArray.length <= index) {
-                throw new ArrayIndexOutOfBoundsException("executionVariables length=" + executionVariableArray.length + ", requested index=" + index
-                );
-            }
-            Object var = executionVariableArray[index];
-            if (var == null) {
-                return 0;
-            }
-            return Double.valueOf(String.valueOf(var));
+            return variables.getDouble(index);
         }
 
         public int length() {
-            return executionVariableArray == null ? 0 : executionVariableArray.length;
+            return variables.getCount();
         }
 
         public boolean isEmpty() {
@@ -1101,38 +1652,139 @@ public abstract class Process<Result, Error extends Throwable> {
         }
 
         public boolean getBooleanVariable(int index) {
-            if (executionVariableArray.length <= index) {
-                throw new ArrayIndexOutOfBoundsException("executionVariables length=" + executionVariableArray.length + ", requested index=" + index);
-            }
-            Object var = executionVariableArray[index];
-            if (var == null) {
-                return false;
-            }
-            return Boolean.parseBoolean(String.valueOf(var));
+            return variables.getBoolean(index);
         }
     }
 
     public int getState() {
-        return state;
+        return stateOf(lifecycle);
+    }
+
+    final static int NOTIFICATION_STARTED = 0,
+            NOTIFICATION_STATE_CHANGED = 1,
+            NOTIFICATION_SUCCESS = 2,
+            NOTIFICATION_ERROR = 3,
+            NOTIFICATION_FAILED = 4,
+            NOTIFICATION_ABORTED = 5,
+            NOTIFICATION_DROPPED = 6,
+            NOTIFICATION_RETRY = 7,
+            NOTIFICATION_PUBLISHED = 8;
+    /**
+     * one preallocated notification per kind, so notifying a state transition doesn't allocate.
+     */
+    private final Notification[] notifications = {
+            new Notification(this, NOTIFICATION_STARTED),
+            new Notification(this, NOTIFICATION_STATE_CHANGED),
+            new Notification(this, NOTIFICATION_SUCCESS),
+            new Notification(this, NOTIFICATION_ERROR),
+            new Notification(this, NOTIFICATION_FAILED),
+            new Notification(this, NOTIFICATION_ABORTED),
+            new Notification(this, NOTIFICATION_DROPPED),
+            new Notification(this, NOTIFICATION_RETRY),
+            new Notification(this, NOTIFICATION_PUBLISHED)
+    };
+
+    /**
+     * @return the preallocated notification of the given kind, or a new one if it is still pending delivery.
+     */
+    private Notification obtainNotification(int kind) {
+        Notification notification = notifications[kind];
+        if (notification.claim()) {
+            return notification;
+        }
+        notification = new Notification(this, kind);
+        notification.claim();
+        return notification;
     }
 
-    protected boolean post(Runnable runnable) {
-        if (getManager() == null) {
-            return false;
+    private void postNotification(Notification notification) {
+        if (!strand.post(notification, getManager())) {
+            notification.unClaim();
         }
-        getManager().post(runnable);
-        return true;
+    }
+
+    /**
+     * a lifecycle notification, posted on the process lane and delivered from the dispatcher.
+     */
+    final static class Notification extends ProcessStrand.Node {
+        final Process<?, ?> process;
+        final int kind;
+        int state, attempt;
+        boolean finished;
+        Throwable cause;
+        long delay;
+
+        Notification(Process<?, ?> process, int kind) {
+            this.process = process;
+            this.kind = kind;
+        }
+
+        @Override
+        public void run() {
+            int state = this.state, attempt = this.attempt;
+            boolean finished = this.finished;
+            Throwable cause = this.cause;
+            long delay = this.delay;
+            this.cause = null;
+            //the payload is copied: the notification can be posted again while delivered.
+            unClaim();
+            switch (kind) {
+                case NOTIFICATION_STARTED:
+                    process.deliverStarted();
+                    break;
+                case NOTIFICATION_STATE_CHANGED:
+                    process.deliverStateChanged(state, finished);
+                    break;
+                case NOTIFICATION_SUCCESS:
+                    process.deliverSucceed();
+                    break;
+                case NOTIFICATION_ERROR:
+                    process.deliverError();
+                    break;
+                case NOTIFICATION_FAILED:
+                    process.deliverFailed();
+                    break;
+                case NOTIFICATION_ABORTED:
+                    process.deliverAborted();
+                    break;
+                case NOTIFICATION_DROPPED:
+                    process.notifyFinished(STATE_DROPPED);
+                    process.onFinishDelivered();
+                    break;
+                case NOTIFICATION_RETRY:
+                    ProcessManager manager = process.getManager();
+                    if (manager != null) {
+                        manager.notifyProcessStateChanged(process);
+                    }
+                    process.onRetry(attempt, cause, delay);
+                    break;
+                case NOTIFICATION_PUBLISHED:
+                    process.publishChannel.deliver();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * post a runnable on the serial lane of this process: runnables posted by a same process are run in order,
+     * one at a time, on its manager dispatcher.
+     *
+     * @return false if the process is not managed.
+     */
+    protected boolean post(Runnable runnable) {
+        return strand.post(runnable, getManager());
     }
 
     protected boolean postDelayed(Runnable runnable, long delay) {
         if (getManager() == null) {
             return false;
         }
-        getManager().postDelayed(runnable, delay);
+        getManager().postDelayed(runnable, delay, priority);
         return true;
     }
 
     protected void unPost(Runnable runnable) {
+        strand.remove(runnable);
         if (getManager() == null) {
             return;
         }
@@ -1152,7 +1804,7 @@ public abstract class Process<Result, Error extends Throwable> {
      * @return state is included into current #Process.state
      */
     public boolean isStateAssignableTo(int state) {
-        int bitAnd = state & this.state;
+        int bitAnd = state & getState();
         return state == bitAnd;
     }
 }
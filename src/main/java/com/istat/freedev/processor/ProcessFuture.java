@@ -0,0 +1,80 @@
+package com.istat.freedev.processor;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link Future} view of a {@link Process}, see {@link Process#asFuture()}.
+ * Waiting threads are parked until the process terminate, they are not polling.
+ */
+final class ProcessFuture<Result> implements Future<Result> {
+    final Process<Result, ?> process;
+    //a pooled process is reset when recycled, its outcome can't be read anymore.
+    final int generation;
+
+    ProcessFuture(Process<Result, ?> process) {
+        this.process = process;
+        this.generation = process.generation;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return process.isRunning() && process.cancel() && process.isCanceled();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return process.isCanceled();
+    }
+
+    @Override
+    public boolean isDone() {
+        return !process.isRunning();
+    }
+
+    @Override
+    public Result get() throws InterruptedException, ExecutionException {
+        checkNotRecycled();
+        process.await();
+        return report();
+    }
+
+    @Override
+    public Result get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        checkNotRecycled();
+        if (!process.await(unit.toMillis(timeout))) {
+            throw new TimeoutException("Process with PID=" + process.getId() + " still running after " + timeout + " " + unit);
+        }
+        return report();
+    }
+
+    private Result report() throws ExecutionException {
+        Throwable failCause = process.getFailCause();
+        Throwable error = process.getError();
+        int state = process.getState();
+        boolean canceled = process.isCanceled();
+        String id = process.getId();
+        Result result = process.getResult();
+        //read before the process is reset by its pool, otherwise they may be the ones of a reset process.
+        checkNotRecycled();
+        if (failCause != null) {
+            throw new ExecutionException(failCause);
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        if (canceled || state == Process.STATE_ABORTED || state == Process.STATE_DROPPED) {
+            throw new CancellationException("Process with PID=" + id + " has been canceled");
+        }
+        return result;
+    }
+
+    private void checkNotRecycled() {
+        if (process.generation != generation) {
+            throw new IllegalStateException("Process has been recycled by its pool, its outcome is not available anymore");
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.istat.freedev.processor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Named set of process executed by the same {@link ProcessManager}, obtained from {@link ProcessManager#getProcessGroup(String)}.
+ * The group keep a direct reference to its running process, so cancelling or counting them doesn't need any id lookup,
+ * and collect statistics about the process which finished inside it.
+ * <p>
+ * Latencies are measured in millis, from the process submission to its termination.
+ */
+public final class ProcessGroup {
+    final String name;
+    final ProcessManager manager;
+    final Set<Process> processes = Collections.newSetFromMap(new ConcurrentHashMap<Process, Boolean>());
+    final AtomicLong submittedCount = new AtomicLong(),
+            succeededCount = new AtomicLong(),
+            failedCount = new AtomicLong(),
+            abortedCount = new AtomicLong(),
+            droppedCount = new AtomicLong(),
+            totalLatency = new AtomicLong(),
+            maxLatency = new AtomicLong();
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition emptied = lock.newCondition();
+
+    ProcessGroup(String name, ProcessManager manager) {
+        this.name = name;
+        this.manager = manager;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ProcessManager getManager() {
+        return manager;
+    }
+
+    /**
+     * Execute the process inside this group, see {@link ProcessManager#execute(Process, Object...)}.
+     */
+    public <T extends Process> T execute(T process, Object... vars) {
+        join(process);
+        return manager.execute(process, vars);
+    }
+
+    /**
+     * Execute the process inside this group with the given id, see {@link ProcessManager#execute(String, Process, Object...)}.
+     */
+    public <T extends Process> T execute(String PID, T process, Object... vars) throws ProcessManager.ProcessException {
+        join(process);
+        return manager.execute(PID, process, vars);
+    }
+
+    /**
+     * Execute a batch of process inside this group, see {@link ProcessManager#executeAll(Collection, Object...)}.
+     */
+    public <T extends Process> List<T> executeAll(Collection<T> processes, Object... vars) {
+        for (T process : processes) {
+            join(process);
+        }
+        return manager.executeAll(processes, vars);
+    }
+
+    private void join(Process process) {
+        if (process.isRunning()) {
+            throw new IllegalStateException("Process is already started");
+        }
+        process.group = this;
+    }
+
+    /**
+     * cancel every running process of the group.
+     *
+     * @return number of canceled process.
+     */
+    public int cancel() {
+        int count = 0;
+        for (Process process : processes) {
+            if (process.cancel()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getRunningCount() {
+        return processes.size();
+    }
+
+    public boolean hasRunningProcess() {
+        return !processes.isEmpty();
+    }
+
+    /**
+     * @return a copy of the running process of the group.
+     */
+    public List<Process> getRunningProcess() {
+        return new ArrayList<>(processes);
+    }
+
+    /**
+     * wait for every running process of the group to finish.
+     *
+     * @param timeout max time to wait, in millis
+     * @return true if the group has no running process anymore.
+     */
+    public boolean await(long timeout) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!processes.isEmpty()) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = emptied.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public long getFinishedCount() {
+        return succeededCount.get() + failedCount.get() + abortedCount.get() + droppedCount.get();
+    }
+
+    public long getSucceededCount() {
+        return succeededCount.get();
+    }
+
+    /**
+     * @return number of process which finished with {@link Process#STATE_ERROR} or {@link Process#STATE_FAILED}.
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getAbortedCount() {
+        return abortedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return mean latency of the finished process, in millis.
+     */
+    public long getAverageLatency() {
+        long finishedCount = getFinishedCount();
+        return finishedCount == 0 ? 0 : totalLatency.get() / finishedCount;
+    }
+
+    /**
+     * @return max latency of the finished process, in millis.
+     */
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    void onProcessRegistered(Process process) {
+        processes.add(process);
+        submittedCount.incrementAndGet();
+    }
+
+    void onProcessUnRegistered(Process process) {
+        if (processes.remove(process)) {
+            submittedCount.decrementAndGet();
+            signalIfEmpty();
+        }
+    }
+
+    void onProcessFinished(Process process) {
+        if (!processes.remove(process)) {
+            return;
+        }
+        switch (process.getState()) {
+            case Process.STATE_SUCCESS:
+                succeededCount.incrementAndGet();
+                break;
+            case Process.STATE_ABORTED:
+                abortedCount.incrementAndGet();
+                break;
+            case Process.STATE_DROPPED:
+                droppedCount.incrementAndGet();
+                break;
+            default:
+                failedCount.incrementAndGet();
+                break;
+        }
+        long enqueueTime = process.getEnqueueTime();
+        if (enqueueTime >= 0) {
+            long latency = Math.max(System.currentTimeMillis() - enqueueTime, 0);
+            totalLatency.addAndGet(latency);
+            long max;
+            while (latency > (max = maxLatency.get()) && !maxLatency.compareAndSet(max, latency)) {
+                //retry
+            }
+        }
+        signalIfEmpty();
+    }
+
+    private void signalIfEmpty() {
+        if (processes.isEmpty()) {
+            lock.lock();
+            try {
+                emptied.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessGroup{" + name + ", running=" + processes.size() + ", finished=" + getFinishedCount() + "}";
+    }
+}
@@ -2,17 +2,28 @@ package com.istat.freedev.processor;
 
 import android.text.TextUtils;
 
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
 import com.istat.freedev.processor.interfaces.ProcessListener;
+import com.istat.freedev.processor.interfaces.ProcessVisitor;
 import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+import com.istat.freedev.processor.utils.AsyncProcessListener;
+import com.istat.freedev.processor.utils.HashedWheelTimer;
+import com.istat.freedev.processor.utils.StripedCounter;
 import com.istat.freedev.processor.utils.ToolKits;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by istat on 04/10/16.
@@ -20,44 +31,214 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 //TODO thing about ProcessManager.Plugin
 //TODO permettre de lancer des Process qui embarque en eux l'execution de plusieurs autre process (avec possibilité de créer des sous ProcessManager dans lequel il tourne ces sous Process)
 public final class ProcessManager {
-    static final ConcurrentHashMap<String, Process> globalProcessQueue = new ConcurrentHashMap();
+    /**
+     * count of process registered into every manager. Each manager register its process into its own processQueue,
+     * only this counter is shared, and it is striped to not become a contention point between namespaces.
+     */
+    static final StripedCounter globalProcessCount = new StripedCounter();
     final ConcurrentHashMap<String, Process> processQueue = new ConcurrentHashMap();
-    final ConcurrentLinkedQueue<ProcessListener> processListeners = new ConcurrentLinkedQueue();
-    private static final int SIZE_GENERATED_PID = 16;
+    final ConcurrentHashMap<Class<?>, Set<Process>> processClassIndex = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<String, ProcessGroup> processGroups = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<ProcessListener, Subscription> processListeners = new ConcurrentHashMap<>();
+    final Object subscriptionLock = new Object();
+    volatile Subscription[] subscriptions = new Subscription[0];
+    static final AtomicInteger managerCount = new AtomicInteger();
+    final AtomicLong processSequence = new AtomicLong();
+    final String generatedIdPrefix = "P" + managerCount.incrementAndGet() + "-";
     private final String nameSpace;
 
     public <T extends Process> T execute(final T process, Object[] vars, String PID) throws ProcessException {
-        if (isRunningPID(PID)) {
-            throw new ProcessException("Sorry, a running process with same PID already running");
-        }
         process.setId(PID);
-        return execute(process, vars);
+        return submit(process, vars);
     }
 
     /**
-     * Execute process with specific execution variables
+     * Execute process with specific execution variables.
+     * The process body is run by the manager {@link ExecutionEngine}, so depending of it, this method may return before
+     * {@link Process#onExecute(Process.ExecutionVariables)} has been called.
+     * If the manager {@link AdmissionController} reject the process, it fail with a {@link ProcessException}.
      *
      * @param process
-     * @param vars
+     * @param vars    the execution variables, or a single {@link ProcessVariables} to give primitive values without boxing.
      * @return
+     * @throws IllegalStateException caused by the {@link ProcessException}, if the process id is already used by a
+     *                               running process, the running one being kept, or if the process has been rejected by
+     *                               the manager {@link AdmissionController}. Use {@link #execute(String, Process, Object...)}
+     *                               to handle both as a {@link ProcessException}.
      */
-    public <T extends Process> T execute(final T process, Object... vars) {
+    public <T extends Process> T execute(final T process, final Object... vars) {
+        try {
+            return submit(process, vars);
+        } catch (ProcessException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    <T extends Process> T submit(final T process, final Object... vars) throws ProcessException {
+        register(process);
+        return start(process, vars);
+    }
+
+    /**
+     * register the process into the manager, under its id if it has one, otherwise under a generated one.
+     *
+     * @throws ProcessException if the process id is already used by a running process.
+     */
+    private void register(Process process) throws ProcessException {
+        process.serialId = processSequence.incrementAndGet();
+        //the process is published into processQueue before being enqueued: reserved, it is not seen as a stale entry.
+        process.reserve();
         String id = process.getId();
-        synchronized (this) {
-            if (ToolKits.isEmpty(id)) {
-                id = System.currentTimeMillis() + "";
-                while (isRunningPID(id)) {
-                    id = generateProcessId();
-                }
-                process.setId(id);
+        if (ToolKits.isEmpty(id)) {
+            id = generatedIdPrefix + Long.toString(process.serialId, Character.MAX_RADIX);
+            while (!registerPID(id, process)) {
+                id = generatedIdPrefix + Long.toString(processSequence.incrementAndGet(), Character.MAX_RADIX);
             }
-            setPID(id, process);
+        } else if (!registerPID(id, process)) {
+            process.unReserve();
+            throw new ProcessException("Sorry, a running process with same PID=" + id + " already running");
         }
-        synchronized (id) {
-            post(() -> notifyProcessEnqueued(process));
-            process.execute(this, vars);
+        ProcessGroup group = process.group;
+        if (group != null) {
+            group.onProcessRegistered(process);
+        }
+    }
+
+    private <T extends Process> T start(final T process, final Object... vars) throws ProcessException {
+        enqueue(process);
+        process.post(() -> notifyProcessEnqueued(process));
+        ExecutionEngine engine = getExecutionEngine(process);
+        Runnable task = createExecutionTask(process, vars);
+        AdmissionController admissionController = mAdmissionController;
+        if (admissionController == null) {
+            engine.execute(task, process.getPriority());
             return process;
         }
+        admit(admissionController, process, task, engine);
+        return process;
+    }
+
+    private void admit(AdmissionController admissionController, Process process, Runnable task, ExecutionEngine engine) throws ProcessException {
+        try {
+            admissionController.admit(process, task, engine);
+        } catch (ProcessException e) {
+            process.notifyFailed(e);
+            throw e;
+        }
+    }
+
+    private ExecutionEngine getExecutionEngine(Process process) {
+        return (process.getFlags() & Process.FLAG_BLOCKING) == Process.FLAG_BLOCKING ?
+                ExecutionEngine.THREAD_PER_PROCESS : mExecutionEngine;
+    }
+
+    private Runnable createExecutionTask(final Process process, final Object... vars) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (!process.isCanceled()) {
+                    process.execute(ProcessManager.this, vars);
+                }
+            }
+        };
+    }
+
+    /**
+     * Execute a batch of process with the same execution variables, for less overhead than one
+     * {@link #execute(Process, Object...)} call per process: the batch is registered in one pass, handed to the
+     * {@link ExecutionEngine} grouped by priority, and listeners receive a single
+     * {@link ProcessListener#onProcessesEnqueued(List)} event for it.
+     * As with {@link #execute(Process, Object...)}, a process rejected by the manager {@link AdmissionController} fail.
+     *
+     * @param processes
+     * @param vars
+     * @return the submitted process, in iteration order.
+     * @throws IllegalStateException if a process id is already used by a running process, in that case none of the
+     *                               batch process is executed.
+     */
+    public <T extends Process> List<T> executeAll(Collection<T> processes, final Object... vars) {
+        final List<Process> batch = new ArrayList<>(processes.size());
+        try {
+            for (T process : processes) {
+                register(process);
+                batch.add(process);
+            }
+        } catch (ProcessException e) {
+            for (Process process : batch) {
+                unRegister(process);
+                if (process.group != null) {
+                    process.group.onProcessUnRegistered(process);
+                }
+            }
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        //process notifications wait for the batch enqueued event. A lane still busy with the notifications of a
+        //previous execution can't be held: its process may be notified before the batch event.
+        BatchEnqueued batchEnqueued = new BatchEnqueued(batch);
+        for (Process process : batch) {
+            enqueue(process);
+            if (process.strand.hold()) {
+                batchEnqueued.heldStrands.add(process.strand);
+            }
+        }
+        pendingBatches.add(batchEnqueued);
+        post(batchEnqueued);
+        AdmissionController admissionController = mAdmissionController;
+        List<Runnable>[] levels = new List[Process.PRIORITY_HIGH - Process.PRIORITY_LOW + 1];
+        for (Process process : batch) {
+            ExecutionEngine engine = getExecutionEngine(process);
+            Runnable task = createExecutionTask(process, vars);
+            if (admissionController != null) {
+                try {
+                    admit(admissionController, process, task, engine);
+                } catch (ProcessException e) {
+                    //the process has been notified of its failure.
+                }
+            } else if (engine != mExecutionEngine) {
+                engine.execute(task, process.getPriority());
+            } else {
+                int level = process.getPriority() - Process.PRIORITY_LOW;
+                if (levels[level] == null) {
+                    levels[level] = new ArrayList<>();
+                }
+                levels[level].add(task);
+            }
+        }
+        for (int level = levels.length - 1; level >= 0; level--) {
+            if (levels[level] != null) {
+                mExecutionEngine.execute(levels[level], level + Process.PRIORITY_LOW);
+            }
+        }
+        return (List) batch;
+    }
+
+    /**
+     * notify the enqueued event of a batch, then release the process lanes held until it. Tracked until run, so
+     * {@link #cancelAll()} dispatch it again if a release of the dispatcher dropped it.
+     */
+    final class BatchEnqueued implements Runnable {
+        final List<Process> batch;
+        final List<ProcessStrand> heldStrands;
+
+        BatchEnqueued(List<Process> batch) {
+            this.batch = batch;
+            this.heldStrands = new ArrayList<>(batch.size());
+        }
+
+        @Override
+        public void run() {
+            if (!pendingBatches.remove(this)) {
+                //dispatched again while the first dispatch was not dropped: it already ran.
+                return;
+            }
+            try {
+                notifyProcessesEnqueued(batch);
+            } finally {
+                for (ProcessStrand strand : heldStrands) {
+                    strand.release();
+                }
+            }
+        }
     }
 
     /**
@@ -66,17 +247,10 @@ public final class ProcessManager {
      * @return
      */
     public List<Process> getRunningProcess() {
-        Iterator<String> iterator = processQueue.keySet().iterator();
-        List<Process> list = new ArrayList<>();
-        while (iterator.hasNext()) {
-            String id = iterator.next();
-            Process<?, ?> process = getProcessById(id);
-            if (process != null) {
-                if (process.isRunning()) {
-                    list.add(process);
-                } else {
-                    processQueue.remove(process);
-                }
+        List<Process> list = new ArrayList<>(processQueue.size());
+        for (Process process : processQueue.values()) {
+            if (process.isRunning()) {
+                list.add(process);
             }
         }
         return list;
@@ -87,22 +261,66 @@ public final class ProcessManager {
     }
 
     public <T extends Process<?, ?>> List<T> getRunningProcess(Class<T> filterClass, boolean acceptAssignableClass) {
-        Iterator<String> iterator = processQueue.keySet().iterator();
-        List<T> list = new ArrayList<T>();
-        while (iterator.hasNext()) {
-            String id = iterator.next();
-            Process<?, ?> process = getProcessById(id);
-            if (process != null) {
-                if (process.isRunning()) {
-                    if (filterClass == null || filterClass == process.getClass() || (acceptAssignableClass && filterClass.isAssignableFrom(process.getClass()))) {
-                        list.add((T) process);
-                    }
-                } else {
-                    processQueue.remove(process);
+        final List<T> list = new ArrayList<T>();
+        forEachRunningProcess(filterClass, acceptAssignableClass, new ProcessVisitor<T>() {
+            @Override
+            public boolean onVisit(T process) {
+                list.add(process);
+                return true;
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Visit running process of the given class, using the class index of the manager: only process of matching
+     * classes are visited.
+     *
+     * @param filterClass           class of process to visit, null to visit all of them.
+     * @param acceptAssignableClass whether or not subclasses of filterClass are visited.
+     * @param visitor               the visitor, which can stop the visit.
+     * @return number of visited process.
+     */
+    public <T extends Process<?, ?>> int forEachRunningProcess(Class<T> filterClass, boolean acceptAssignableClass, ProcessVisitor<? super T> visitor) {
+        int count = 0;
+        if (filterClass != null && !acceptAssignableClass) {
+            Set<Process> processes = processClassIndex.get(filterClass);
+            count = processes == null ? 0 : visit(processes, visitor, 0);
+            return count < 0 ? -count - 1 : count;
+        }
+        for (Map.Entry<Class<?>, Set<Process>> entry : processClassIndex.entrySet()) {
+            if (filterClass == null || filterClass.isAssignableFrom(entry.getKey())) {
+                count = visit(entry.getValue(), visitor, count);
+                if (count < 0) {
+                    return -count - 1;
                 }
             }
         }
-        return list;
+        return count;
+    }
+
+    /**
+     * @return count of visited process, or -(count + 1) if the visitor stopped the visit.
+     */
+    private <T extends Process<?, ?>> int visit(Set<Process> processes, ProcessVisitor<? super T> visitor, int count) {
+        for (Process process : processes) {
+            if (process.isRunning()) {
+                count++;
+                if (!visitor.onVisit((T) process)) {
+                    return -count - 1;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return a live, read only, view of the process of exactly the given class registered into the manager.
+     * Nothing is copied: the view follow process registration and termination. A process which just finished can
+     * appear inside it until its termination has been notified, check {@link Process#isRunning()} if needed.
+     */
+    public <T extends Process<?, ?>> Collection<T> getRunningProcessView(Class<T> processClass) {
+        return (Collection) Collections.unmodifiableSet(getIndexedProcesses(processClass));
     }
 
     /**
@@ -121,14 +339,11 @@ public final class ProcessManager {
      * @param PID
      * @param vars
      * @return
-     * @throws ProcessException if given id is already used inside the manager
+     * @throws ProcessException if given id is already used inside the manager or if the process has been rejected by the manager {@link AdmissionController}
      */
     public final <T extends Process> T execute(String PID, T process, Object... vars) throws ProcessException {
-        if (isRunningPID(PID)) {
-            throw new ProcessException("Sorry, a running process with same PID alrady running");
-        }
         process.setId(PID);
-        return execute(process, vars);
+        return submit(process, vars);
     }
 
     /**
@@ -142,10 +357,65 @@ public final class ProcessManager {
         while (enumProcess.hasMoreElements()) {
             enumProcess.nextElement().cancel();
         }
+        Iterator<Runnable> iterator = delayedPosts.keySet().iterator();
+        while (iterator.hasNext()) {
+            cancelDelayedPost(iterator.next());
+        }
         mDispatcher.release();
+        releaseCount.incrementAndGet();
+        for (BatchEnqueued batchEnqueued : pendingBatches) {
+            post(batchEnqueued);
+        }
+        //the release may have dropped batch events and process lanes: dispatch them again so their pending
+        //notifications, as the abortions above, are delivered. Other lanes recover on their next post.
+        for (Process process : processQueue.values()) {
+            process.strand.recover();
+        }
         return livingProcess;
     }
 
+    /**
+     * @return the group of the given name, created if it doesn't exist yet. See {@link #removeProcessGroup(String)}.
+     */
+    public ProcessGroup getProcessGroup(String name) {
+        if (name == null) {
+            throw new NullPointerException("group name can't be null");
+        }
+        ProcessGroup group = processGroups.get(name);
+        if (group == null) {
+            ProcessGroup newGroup = new ProcessGroup(name, this);
+            group = processGroups.putIfAbsent(name, newGroup);
+            if (group == null) {
+                group = newGroup;
+            }
+        }
+        return group;
+    }
+
+    /**
+     * forget the group of the given name: groups are kept by the manager until removed. Its process still running
+     * finish inside it, and its statistics stay readable; a later {@link #getProcessGroup(String)} of the same name
+     * create a new group.
+     *
+     * @return the removed group, or null if there was no group of the given name.
+     */
+    public ProcessGroup removeProcessGroup(String name) {
+        if (name == null) {
+            throw new NullPointerException("group name can't be null");
+        }
+        return processGroups.remove(name);
+    }
+
+    /**
+     * cancel every running process of the given group.
+     *
+     * @return number of canceled process.
+     */
+    public int cancelGroup(String name) {
+        ProcessGroup group = processGroups.get(name);
+        return group != null ? group.cancel() : 0;
+    }
+
     public int release() {
         unRegisterAllProcessListener();
         return cancelAll();
@@ -155,13 +425,18 @@ public final class ProcessManager {
         this(Processor.DEFAULT_PROCESSOR_TAG, null);
     }
 
+    ProcessManager(String nameSpace, RunnableDispatcher dispatcher) {
+        this(nameSpace, dispatcher, null);
+    }
+
 //    ProcessManager(String nameSpace) {
 //        this(nameSpace, null);
 //    }
 
-    ProcessManager(String nameSpace, RunnableDispatcher dispatcher) {
+    ProcessManager(String nameSpace, RunnableDispatcher dispatcher, ExecutionEngine executionEngine) {
         this.nameSpace = nameSpace;
         this.mDispatcher = dispatcher != null ? dispatcher : RunnableDispatcher.DEFAULT;
+        this.mExecutionEngine = executionEngine != null ? executionEngine : ExecutionEngine.CALLER_RUNS;
     }
 
     public String getNameSpace() {
@@ -179,8 +454,9 @@ public final class ProcessManager {
         if (process != null) {
             if (process.isRunning()) {
                 return process;
-            } else {
-                processQueue.remove(process.getId());
+            } else if (!process.isAlive() && processQueue.remove(PID, process)) {
+                globalProcessCount.decrement();
+                unIndex(process);
             }
         }
         return null;
@@ -289,24 +565,73 @@ public final class ProcessManager {
         if (TextUtils.isEmpty(updatePID)) {
             throw new ProcessException("Oups, you atempt to set a NULL value for  Process with ID=" + initialPID);
         }
-        if (!processQueue.containsKey(initialPID)) {
+        Process process = getProcessById(initialPID);
+        if (process == null) {
             throw new ProcessException("Oups, not running process associated to id=" + initialPID + " manager can't switch id with new PID= " + updatePID);
         }
-        if (processQueue.containsKey(updatePID)) {
+        if (initialPID.equals(updatePID)) {
+            return process;
+        }
+        if (!registerPID(updatePID, process)) {
             throw new ProcessException("Oups, ConcurrentProcessId a running process is alrady associated to this id=" + updatePID + ". ");
         }
-        Process process = processQueue.get(initialPID);
-        setPID(updatePID, process);
-        processQueue.remove(initialPID);
-        globalProcessQueue.remove(initialPID);
+        if (processQueue.remove(initialPID, process)) {
+            globalProcessCount.decrement();
+        }
         return process;
     }
 
-    private void setPID(String id, Process process) {
-        process.setId(id);
+    /**
+     * register the process under the given id, without any lock: a slot held by a process which is not running anymore,
+     * nor reserved by a registration in progress, is taken over.
+     *
+     * @return false if a running process already use this id.
+     */
+    private boolean registerPID(String id, Process process) {
         if ((process.getFlags() & Process.FLAG_DETACHED) != Process.FLAG_DETACHED) {
-            processQueue.put(id, process);
-            globalProcessQueue.put(id, process);
+            while (true) {
+                Process current = processQueue.putIfAbsent(id, process);
+                if (current == null) {
+                    globalProcessCount.increment();
+                    break;
+                }
+                if (current == process) {
+                    break;
+                }
+                if (current.isAlive()) {
+                    return false;
+                }
+                if (processQueue.replace(id, current, process)) {
+                    unIndex(current);
+                    break;
+                }
+            }
+            index(process);
+        }
+        process.setId(id);
+        return true;
+    }
+
+    private Set<Process> getIndexedProcesses(Class<?> processClass) {
+        Set<Process> processes = processClassIndex.get(processClass);
+        if (processes == null) {
+            Set<Process> newProcesses = Collections.newSetFromMap(new ConcurrentHashMap<Process, Boolean>());
+            processes = processClassIndex.putIfAbsent(processClass, newProcesses);
+            if (processes == null) {
+                processes = newProcesses;
+            }
+        }
+        return processes;
+    }
+
+    private void index(Process process) {
+        getIndexedProcesses(process.getClass()).add(process);
+    }
+
+    private void unIndex(Process process) {
+        Set<Process> processes = processClassIndex.get(process.getClass());
+        if (processes != null) {
+            processes.remove(process);
         }
     }
 
@@ -316,8 +641,61 @@ public final class ProcessManager {
      * @param listener
      */
     public final void registerProcessListener(ProcessListener listener) {
-        if (listener != null && !processListeners.contains(listener)) {
-            processListeners.add(listener);
+        registerProcessListener(listener, ProcessListener.ANY_STATE, null);
+    }
+
+    /**
+     * register a listener which is only notified for process with a state assignable to the given mask
+     * (see {@link Process#isStateAssignableTo(int)}), for example {@link Process#STATE_FLAG_FINISHED} to be notified
+     * of finished process only.
+     * If the listener is already registered, its filter is replaced.
+     *
+     * @param listener
+     * @param stateMask    state mask the process state has to match, {@link ProcessListener#ANY_STATE} to accept all of them.
+     * @param processClass class of process to be notified of (subclasses included), null to accept all of them.
+     */
+    public final void registerProcessListener(ProcessListener listener, int stateMask, Class<? extends Process> processClass) {
+        if (listener != null) {
+            subscribe(listener, new Subscription(listener, stateMask, processClass));
+        }
+    }
+
+    /**
+     * register a listener notified asynchronously, through its own bounded queue: a slow listener doesn't delay
+     * the manager and the other listeners anymore. The listener is unregistered as usual, with
+     * {@link #unRegisterProcessListener(ProcessListener)}.
+     *
+     * @param listener
+     * @param stateMask      state mask the process state has to match, {@link ProcessListener#ANY_STATE} to accept all of them.
+     * @param processClass   class of process to be notified of (subclasses included), null to accept all of them.
+     * @param capacity       max number of events waiting for the listener.
+     * @param overflowPolicy what to do with an event when the listener queue is full.
+     * @return the asynchronous listener wrapping the given one, giving access to its dropped events count.
+     */
+    public final AsyncProcessListener registerAsyncProcessListener(ProcessListener listener, int stateMask, Class<? extends Process> processClass,
+                                                                    int capacity, AsyncProcessListener.OverflowPolicy overflowPolicy) {
+        AsyncProcessListener asyncListener = new AsyncProcessListener(listener, capacity, overflowPolicy);
+        subscribe(listener, new Subscription(asyncListener, stateMask, processClass));
+        return asyncListener;
+    }
+
+    public final AsyncProcessListener registerAsyncProcessListener(ProcessListener listener, int capacity, AsyncProcessListener.OverflowPolicy overflowPolicy) {
+        return registerAsyncProcessListener(listener, ProcessListener.ANY_STATE, null, capacity, overflowPolicy);
+    }
+
+    private void subscribe(ProcessListener listener, Subscription subscription) {
+        synchronized (subscriptionLock) {
+            Subscription previous = processListeners.put(listener, subscription);
+            Subscription[] current = subscriptions;
+            Subscription[] updated;
+            if (previous == null) {
+                updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = subscription;
+            } else {
+                updated = current.clone();
+                updated[indexOf(current, previous)] = subscription;
+            }
+            subscriptions = updated;
         }
     }
 
@@ -328,68 +706,112 @@ public final class ProcessManager {
      * @throws Exception si le Listener n'a pas été enregistré ou ne peut pas être désenregistré pour le moment.
      */
     public final void unRegisterProcessListener(ProcessListener listener) throws Exception {
-        if (processListeners.contains(listener)) {
-            processListeners.remove(listener);
-        } else {
-            throw new Exception("this listener is not registered to drive manager.");
+        synchronized (subscriptionLock) {
+            Subscription subscription = listener != null ? processListeners.remove(listener) : null;
+            if (subscription == null) {
+                throw new Exception("this listener is not registered to drive manager.");
+            }
+            Subscription[] current = subscriptions;
+            int index = indexOf(current, subscription);
+            Subscription[] updated = new Subscription[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            subscriptions = updated;
         }
     }
 
-    private final int unRegisterAllProcessListener() {
-        int listenerSize = processListeners.size();
-        processListeners.clear();
-        return listenerSize;
+    /**
+     * @return true if the listener is registered to this manager, see {@link #registerProcessListener(ProcessListener)}.
+     */
+    public final boolean isProcessListenerRegistered(ProcessListener listener) {
+        return listener != null && processListeners.containsKey(listener);
     }
 
-    static String[] ID_PROPOSITION_CHAR = {"0", "1", "2", "3", "4", "5",
-            "6", "7", "8", "9", "A", "B", "C", "D", "E", "F"};
+    private final int unRegisterAllProcessListener() {
+        synchronized (subscriptionLock) {
+            int listenerSize = subscriptions.length;
+            processListeners.clear();
+            subscriptions = new Subscription[0];
+            return listenerSize;
+        }
+    }
 
-    private String generateProcessId() {
-        Random random = new Random();
-        String id = "";
-        for (int i = 0; i < SIZE_GENERATED_PID; i++) {
-            int index = random
-                    .nextInt(ID_PROPOSITION_CHAR.length - 1);
-            id += ID_PROPOSITION_CHAR[index];
+    private static int indexOf(Subscription[] subscriptions, Subscription subscription) {
+        for (int i = 0; i < subscriptions.length; i++) {
+            if (subscriptions[i] == subscription) {
+                return i;
+            }
         }
-        return id;
+        return -1;
     }
 
     void notifyProcessEnqueued(final Process process/*, Object[] vars*/) {
-        for (ProcessListener listener : processListeners) {
-            listener.onProcessStateChanged(process, process.getId(), process.getState());
-            listener.onProcessEnqueued(process, process.getId());
+        String processId = process.getId();
+        int state = process.getState();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accept(process, state)) {
+                subscription.listener.onProcessStateChanged(process, processId, state);
+                subscription.listener.onProcessEnqueued(process, processId);
+            }
+        }
+    }
+
+    void notifyProcessesEnqueued(final List<Process> processes) {
+        for (Subscription subscription : subscriptions) {
+            List<Process> accepted = subscription.filter(processes);
+            if (!accepted.isEmpty()) {
+                subscription.listener.onProcessesEnqueued(accepted);
+            }
         }
     }
 
     void notifyProcessStarted(final Process process/*, Object[] vars*/) {
-        for (ProcessListener listener : processListeners) {
-            listener.onProcessStateChanged(process, process.getId(), process.getState());
-            listener.onProcessStarted(process, process.getId());
+        String processId = process.getId();
+        int state = process.getState();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accept(process, state)) {
+                subscription.listener.onProcessStateChanged(process, processId, state);
+                subscription.listener.onProcessStarted(process, processId);
+            }
         }
     }
 
 
+    private void unRegister(Process process) {
+        process.unReserve();
+        if (processQueue.remove(process.getId(), process)) {
+            globalProcessCount.decrement();
+            unIndex(process);
+        }
+    }
+
     void notifyProcessFinished(Process process) {
-        globalProcessQueue.remove(process.getId());
-        processQueue.remove(process.getId());
-        for (ProcessListener listener : processListeners) {
-            String processId = "";
-            if (process != null) {
-                processId = process.getId();
+        unRegister(process);
+        ProcessGroup group = process.group;
+        if (group != null) {
+            group.onProcessFinished(process);
+        }
+        AdmissionController admissionController = process.admission;
+        if (admissionController != null) {
+            admissionController.onProcessFinished(process);
+        }
+        String processId = process.getId();
+        int state = process.getState();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accept(process, state)) {
+                subscription.listener.onProcessStateChanged(process, processId, state);
+                subscription.listener.onProcessFinished(process, processId);
             }
-            listener.onProcessStateChanged(process, processId, process.getState());
-            listener.onProcessFinished(process, processId);
         }
     }
 
     void notifyProcessStateChanged(Process process) {
-        for (ProcessListener listener : processListeners) {
-            String processId = "";
-            if (process != null) {
-                processId = process.getId();
+        String processId = process.getId();
+        int state = process.getState();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accept(process, state)) {
+                subscription.listener.onProcessStateChanged(process, processId, state);
             }
-            listener.onProcessStateChanged(process, processId, process.getState());
         }
     }
 
@@ -397,14 +819,186 @@ public final class ProcessManager {
         return processQueue.size();
     }
 
+    /**
+     * @return count of process registered into every manager of the application, aggregated when called.
+     */
     public final static int getGlobalRunningProcessCount() {
-        return globalProcessQueue.size();
+        return globalProcessCount.intValue();
     }
 
     public RunnableDispatcher getDispatcher() {
         return mDispatcher;
     }
 
+    public ExecutionEngine getExecutionEngine() {
+        return mExecutionEngine;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return mAdmissionController;
+    }
+
+    /**
+     * Bound the number of process running at the same time inside this manager.
+     * Process already admitted by a previous controller still release their slot into it when they finish, process
+     * pending into it are handed over to the new one, or run if there is none.
+     *
+     * @param admissionController the controller to use, null to accept every submitted process.
+     */
+    public void setAdmissionController(AdmissionController admissionController) {
+        AdmissionController previous = this.mAdmissionController;
+        this.mAdmissionController = admissionController;
+        if (previous != null && previous != admissionController) {
+            previous.handOverPending(admissionController);
+        }
+    }
+
+    public HashedWheelTimer getTimer() {
+        return mTimer;
+    }
+
+    /**
+     * Define the timer used to wait delays of {@link #postDelayed(Runnable, long)} before handing runnable to the dispatcher.
+     * by default, managers share {@link HashedWheelTimer#getDefault()}.
+     *
+     * @param timer the timer to use, null to restore the default one.
+     */
+    public void setTimer(HashedWheelTimer timer) {
+        this.mTimer = timer != null ? timer : HashedWheelTimer.getDefault();
+    }
+
+    public long getDefaultTimeout() {
+        return mDefaultTimeout;
+    }
+
+    /**
+     * Define the max running time of the process which doesn't define their own, see {@link Process#setTimeout(long)}.
+     * Deadlines are waited on the manager {@link #getTimer() timer}, without any thread per process.
+     *
+     * @param timeout max running time in millis, 0 for no limit.
+     */
+    public void setDefaultTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout can't be negative, given=" + timeout);
+        }
+        this.mDefaultTimeout = timeout;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return mRetryBudget;
+    }
+
+    /**
+     * Bound the retries done by the process of this manager, see {@link Process#setRetryPolicy(RetryPolicy)}.
+     *
+     * @param retryBudget the budget, null for retries limited by the policies only.
+     */
+    public void setRetryBudget(RetryBudget retryBudget) {
+        this.mRetryBudget = retryBudget;
+    }
+
+    boolean tryAcquireRetry() {
+        RetryBudget retryBudget = mRetryBudget;
+        return retryBudget == null || retryBudget.tryAcquireRetry();
+    }
+
+    /**
+     * execute again a failed process, which kept its registration, after the given delay.
+     */
+    void retry(final Process process, ProcessVariables variables, long delay) {
+        final Runnable task = createExecutionTask(process, variables);
+        final ExecutionEngine engine = getExecutionEngine(process);
+        mTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (engine == ExecutionEngine.CALLER_RUNS) {
+                    //no caller to run the body on: it is run from the dispatcher, as the process notifications.
+                    post(task, process.getPriority());
+                } else {
+                    engine.execute(task, process.getPriority());
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * make a registered process pending: arm its deadline and feed the retry budget.
+     */
+    private void enqueue(Process process) {
+        process.enqueue(this);
+        armDeadline(process);
+        RetryBudget retryBudget = mRetryBudget;
+        if (retryBudget != null) {
+            retryBudget.onProcessSubmitted();
+        }
+    }
+
+    /**
+     * arm the deadline of a freshly enqueued process, if it has a timeout.
+     */
+    private void armDeadline(final Process process) {
+        long timeout = process.timeout > 0 ? process.timeout : mDefaultTimeout;
+        if (timeout <= 0) {
+            return;
+        }
+        final long serialId = process.serialId;
+        HashedWheelTimer.Timeout deadline = mTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                //the abort is run from the dispatcher, as the process notifications.
+                if (process.isRunning()) {
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            //not the next execution of a restarted or pooled process.
+                            if (process.serialId == serialId) {
+                                process.timeOut();
+                            }
+                        }
+                    }, process.getPriority());
+                }
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        process.deadline = deadline;
+        if (!process.isRunning()) {
+            //finished before its deadline was set.
+            deadline.cancel();
+        }
+    }
+
+    final static class Subscription {
+        final ProcessListener listener;
+        final int stateMask;
+        final Class<? extends Process> processClass;
+
+        Subscription(ProcessListener listener, int stateMask, Class<? extends Process> processClass) {
+            this.listener = listener;
+            this.stateMask = stateMask;
+            this.processClass = processClass;
+        }
+
+        boolean accept(Process process, int state) {
+            return (state & stateMask) == stateMask && (processClass == null || processClass.isInstance(process));
+        }
+
+        /**
+         * @return the accepted process, the given list itself if all of them are accepted.
+         */
+        List<Process> filter(List<Process> processes) {
+            List<Process> accepted = null;
+            for (int i = 0; i < processes.size(); i++) {
+                Process process = processes.get(i);
+                boolean accept = accept(process, process.getState());
+                if (accepted == null && !accept) {
+                    accepted = new ArrayList<>(processes.subList(0, i));
+                } else if (accepted != null && accept) {
+                    accepted.add(process);
+                }
+            }
+            return accepted != null ? accepted : processes;
+        }
+    }
+
     public static class ProcessException extends Exception {
         public ProcessException(String message) {
             super(message);
@@ -416,31 +1010,174 @@ public final class ProcessManager {
     }
 
     private final RunnableDispatcher mDispatcher;
+    private final ExecutionEngine mExecutionEngine;
+    private volatile AdmissionController mAdmissionController;
+    private volatile HashedWheelTimer mTimer = HashedWheelTimer.getDefault();
+    private volatile long mDefaultTimeout = 0;
+    private volatile RetryBudget mRetryBudget;
+    final ConcurrentHashMap<Runnable, DelayedPosts> delayedPosts = new ConcurrentHashMap<>();
+    //number of dispatcher releases, which may have dropped dispatched process lanes.
+    final AtomicInteger releaseCount = new AtomicInteger();
+    final Set<BatchEnqueued> pendingBatches = Collections.newSetFromMap(new ConcurrentHashMap<BatchEnqueued, Boolean>());
 
     public final boolean post(Runnable runnable) {
+        return post(runnable, Process.PRIORITY_NORMAL);
+    }
+
+    public final boolean post(Runnable runnable, int priority) {
         if (mDispatcher == null) {
             return false;
         }
-        mDispatcher.dispatch(runnable, 0);
+        mDispatcher.dispatch(runnable, 0, priority);
         return true;
     }
 
+    /**
+     * @return number of releases of the dispatcher done by {@link #cancelAll()}.
+     */
+    final int getReleaseCount() {
+        return releaseCount.get();
+    }
+
     public final boolean postDelayed(Runnable runnable, long delayed) {
-        if (mDispatcher == null) {
+        return postDelayed(runnable, delayed, Process.PRIORITY_NORMAL);
+    }
+
+    public final boolean postDelayed(Runnable runnable, long delayed, int priority) {
+        if (mDispatcher == null || runnable == null) {
             return false;
         }
-        mDispatcher.dispatch(runnable, delayed);
-        return false;
+        if (delayed <= 0) {
+            return post(runnable, priority);
+        }
+        DelayedPost delayedPost = new DelayedPost(runnable, priority);
+        addDelayedPost(delayedPost);
+        HashedWheelTimer.Timeout timeout = mTimer.schedule(delayedPost, delayed, TimeUnit.MILLISECONDS);
+        delayedPost.timeout = timeout;
+        if (delayedPost.canceled) {
+            //unPosted while being scheduled.
+            timeout.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * register a delayed post among the pending ones of its runnable, so {@link #unPost(Runnable)} cancel it.
+     */
+    private void addDelayedPost(DelayedPost delayedPost) {
+        while (true) {
+            DelayedPosts posts = delayedPosts.get(delayedPost.runnable);
+            if (posts == null) {
+                DelayedPosts newPosts = new DelayedPosts(delayedPost.runnable);
+                posts = delayedPosts.putIfAbsent(delayedPost.runnable, newPosts);
+                if (posts == null) {
+                    posts = newPosts;
+                }
+            }
+            if (posts.add(delayedPost)) {
+                return;
+            }
+            //the posts have just been removed from delayedPosts, add to fresh ones.
+        }
     }
 
     public final void unPost(Runnable runnable) {
-        if (mDispatcher == null) {
+        if (mDispatcher == null || runnable == null) {
             return;
         }
+        cancelDelayedPost(runnable);
         mDispatcher.cancel(runnable);
         return;
     }
 
+    private void cancelDelayedPost(Runnable runnable) {
+        DelayedPosts posts = delayedPosts.remove(runnable);
+        if (posts != null) {
+            posts.cancel();
+        }
+    }
+
+    /**
+     * pending delayed posts of a same runnable. Once removed from {@link #delayedPosts}, it is detached: nothing can
+     * be added to it anymore.
+     */
+    final class DelayedPosts {
+        final Runnable runnable;
+        final ArrayList<DelayedPost> pending = new ArrayList<>(2);
+        boolean detached = false;
+
+        DelayedPosts(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        synchronized boolean add(DelayedPost delayedPost) {
+            if (detached) {
+                return false;
+            }
+            pending.add(delayedPost);
+            delayedPost.posts = this;
+            return true;
+        }
+
+        /**
+         * remove an expired post.
+         *
+         * @return false if the post has been canceled meanwhile.
+         */
+        synchronized boolean expire(DelayedPost delayedPost) {
+            if (delayedPost.canceled) {
+                return false;
+            }
+            pending.remove(delayedPost);
+            if (pending.isEmpty() && !detached) {
+                detached = true;
+                delayedPosts.remove(runnable, this);
+            }
+            return true;
+        }
+
+        void cancel() {
+            DelayedPost[] canceled;
+            synchronized (this) {
+                detached = true;
+                canceled = pending.toArray(new DelayedPost[pending.size()]);
+                pending.clear();
+                for (DelayedPost delayedPost : canceled) {
+                    delayedPost.canceled = true;
+                }
+            }
+            for (DelayedPost delayedPost : canceled) {
+                HashedWheelTimer.Timeout timeout = delayedPost.timeout;
+                if (timeout != null) {
+                    timeout.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * a runnable waiting its delay inside the timer.
+     */
+    final class DelayedPost implements Runnable {
+        final Runnable runnable;
+        final int priority;
+        volatile HashedWheelTimer.Timeout timeout;
+        volatile boolean canceled = false;
+        DelayedPosts posts;
+
+        DelayedPost(Runnable runnable, int priority) {
+            this.runnable = runnable;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            if (posts.expire(this)) {
+                mDispatcher.dispatch(runnable, 0, priority);
+            }
+        }
+    }
+
     private static boolean isAndroidOs() {
         String osName = System.getProperty("os.name").toLowerCase();
         if ("linux".equals(osName)) {
@@ -0,0 +1,161 @@
+package com.istat.freedev.processor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of reusable process of a same class, for high rate short lived process.
+ * A process obtained from {@link #acquire()} is reset and given back to its pool once its final notifications have
+ * been delivered, and once the calls still running on it, as {@link Process#cancel()}, returned. See
+ * {@link Process#onRecycle()}: its result, error and callbacks must so be consumed from its callbacks or promises,
+ * never kept nor read after its termination.
+ * <p>
+ * A reference kept after the termination is stale: {@link Process#getResult()} or {@link Process#await()} may see the
+ * reset process, or its next execution, and {@link Process#cancel()} may cancel its next execution. Only the future
+ * given by {@link Process#asFuture()} detect it: it fail once the process has been recycled.
+ * <p>
+ * A process is not recycled when the pool is full, or when it has been jeopardised.
+ */
+public final class ProcessPool<T extends Process> {
+    public final static int DEFAULT_CAPACITY = 64;
+    final static ConcurrentHashMap<Class<?>, ProcessPool<?>> classPools = new ConcurrentHashMap<>();
+
+    public interface Factory<T extends Process> {
+        T create();
+    }
+
+    final Factory<T> factory;
+    final Object[] idle;
+    final ReentrantLock lock = new ReentrantLock();
+    final AtomicLong createdCount = new AtomicLong(), recycledCount = new AtomicLong();
+    int idleCount = 0;
+
+    public ProcessPool(Factory<T> factory) {
+        this(factory, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param factory  create a new process when the pool is empty
+     * @param capacity max number of idle process kept by the pool
+     */
+    public ProcessPool(Factory<T> factory, int capacity) {
+        if (factory == null) {
+            throw new NullPointerException("factory can't be null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0, given=" + capacity);
+        }
+        this.factory = factory;
+        this.idle = new Object[capacity];
+    }
+
+    /**
+     * @return the shared pool of the given class, its process are created with its no-arg constructor.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Process> ProcessPool<T> of(final Class<T> cLass) {
+        ProcessPool<T> pool = (ProcessPool<T>) classPools.get(cLass);
+        if (pool == null) {
+            ProcessPool<T> newPool = new ProcessPool<>(new Factory<T>() {
+                @Override
+                public T create() {
+                    try {
+                        return cLass.newInstance();
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Unable to instantiate process class=" + cLass, e);
+                    }
+                }
+            });
+            pool = (ProcessPool<T>) classPools.putIfAbsent(cLass, newPool);
+            if (pool == null) {
+                pool = newPool;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @return an idle process of the pool, or a new one if the pool is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        T process = null;
+        lock.lock();
+        try {
+            if (idleCount > 0) {
+                process = (T) idle[--idleCount];
+                idle[idleCount] = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (process == null) {
+            process = factory.create();
+            createdCount.incrementAndGet();
+        }
+        process.pool = this;
+        return process;
+    }
+
+    /**
+     * give a reset process back to the pool.
+     *
+     * @return false if the pool is full, the process is then left to the garbage collector.
+     */
+    boolean recycle(Process process) {
+        lock.lock();
+        try {
+            if (idleCount == idle.length) {
+                return false;
+            }
+            idle[idleCount++] = process;
+        } finally {
+            lock.unlock();
+        }
+        recycledCount.incrementAndGet();
+        return true;
+    }
+
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idleCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return idle.length;
+    }
+
+    /**
+     * @return number of process created by the pool factory.
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return number of process given back to the pool.
+     */
+    public long getRecycledCount() {
+        return recycledCount.get();
+    }
+
+    /**
+     * drop every idle process.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            for (int i = 0; i < idleCount; i++) {
+                idle[i] = null;
+            }
+            idleCount = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.istat.freedev.processor;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Serial lane of a process: runnables posted by a process run one after the other, in post order, on whichever thread
+ * its manager dispatcher provide, while lanes of other process progress in parallel. A lane is scheduled on the
+ * dispatcher only when it goes from idle to non empty.
+ * <p>
+ * The lane is an intrusive multi-producer single-consumer queue of {@link Node}: a node reused by its owner, like
+ * the notifications of a process, is posted without any lock nor allocation. Runnables posted by the process are
+ * also indexed, under a lock, so {@link #remove(Runnable)} cancel them without walking the queue.
+ */
+final class ProcessStrand implements Runnable {
+    /**
+     * max runnables run per dispatch, so a busy process let others progress on single threaded dispatchers.
+     */
+    final static int MAX_BATCH_SIZE = 64;
+    final static int STATE_IDLE = 0, STATE_SCHEDULED = 1;
+    private final static AtomicIntegerFieldUpdater<ProcessStrand> DISPATCHED_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(ProcessStrand.class, "dispatched");
+    final AtomicInteger state = new AtomicInteger(STATE_IDLE);
+    final Process process;
+    volatile ProcessManager manager;
+    //1 while a dispatch of the lane is pending: a dispatch run the lane only if it claims it, so the lane can be
+    //dispatched again, when its dispatch may have been dropped, without ever running twice at a time.
+    volatile int dispatched = 0;
+    //manager the lane has been dispatched on, and its release count at that time, see recover().
+    volatile ProcessManager scheduler;
+    volatile int schedulerReleaseCount;
+    //consumer side of the queue, only read by the thread running the lane.
+    final Node stub = new RunnableNode(null);
+    volatile Node head = stub;
+    final AtomicReference<Node> tail = new AtomicReference<>(stub);
+    //pending runnable nodes, the newest of each runnable linking to the older ones. Guarded by itself.
+    final HashMap<Runnable, RunnableNode> pendingRunnables = new HashMap<>();
+
+    ProcessStrand(Process process) {
+        this.process = process;
+    }
+
+    boolean post(Runnable runnable, ProcessManager manager) {
+        if (runnable == null || manager == null) {
+            return false;
+        }
+        RunnableNode node = new RunnableNode(runnable);
+        synchronized (pendingRunnables) {
+            node.older = pendingRunnables.put(runnable, node);
+        }
+        return post(node, manager);
+    }
+
+    /**
+     * post a node which is not queued yet, see {@link Node#claim()}.
+     */
+    boolean post(Node node, ProcessManager manager) {
+        if (node == null || manager == null) {
+            return false;
+        }
+        this.manager = manager;
+        push(node);
+        if (state.compareAndSet(STATE_IDLE, STATE_SCHEDULED)) {
+            schedule(manager);
+        } else {
+            recover();
+        }
+        return true;
+    }
+
+    private void schedule(ProcessManager manager) {
+        scheduler = manager;
+        schedulerReleaseCount = manager.getReleaseCount();
+        dispatched = 1;
+        manager.post(this, process.getPriority());
+    }
+
+    /**
+     * dispatch the lane again if its pending dispatch may have been dropped by a release of the dispatcher, see
+     * {@link ProcessManager#cancelAll()}. Otherwise the lane would stay scheduled forever, and its process would
+     * never be notified anymore.
+     */
+    void recover() {
+        ProcessManager scheduler = this.scheduler;
+        if (dispatched == 1 && scheduler != null) {
+            int releaseCount = scheduler.getReleaseCount();
+            if (releaseCount != schedulerReleaseCount) {
+                schedulerReleaseCount = releaseCount;
+                scheduler.post(this, process.getPriority());
+            }
+        }
+    }
+
+    private void push(Node node) {
+        node.next = null;
+        Node previous = tail.getAndSet(node);
+        previous.next = node;
+    }
+
+    /**
+     * @return the next node of the lane, null if empty or if the next node is still being pushed.
+     */
+    private Node poll() {
+        Node head = this.head;
+        Node next = head.next;
+        if (head == stub) {
+            if (next == null) {
+                return null;
+            }
+            this.head = head = next;
+            next = next.next;
+        }
+        if (next != null) {
+            this.head = next;
+            return head;
+        }
+        if (tail.get() != head) {
+            return null;
+        }
+        push(stub);
+        next = head.next;
+        if (next != null) {
+            this.head = next;
+            return head;
+        }
+        return null;
+    }
+
+    private boolean isEmpty() {
+        return head == stub && tail.get() == stub;
+    }
+
+    /**
+     * cancel every pending post of the runnable, they will be skipped by the lane. A post already running is not.
+     *
+     * @return false if the runnable had no pending post.
+     */
+    boolean remove(Runnable runnable) {
+        if (runnable == null) {
+            return false;
+        }
+        synchronized (pendingRunnables) {
+            RunnableNode newest = pendingRunnables.remove(runnable);
+            for (RunnableNode node = newest; node != null; node = node.older) {
+                node.canceled = true;
+            }
+            return newest != null;
+        }
+    }
+
+    /**
+     * forget a runnable node about to run, it is the oldest of its runnable unless canceled.
+     */
+    private void unIndex(RunnableNode node) {
+        synchronized (pendingRunnables) {
+            RunnableNode newest = pendingRunnables.get(node.runnable);
+            if (newest == node) {
+                if (node.older != null) {
+                    pendingRunnables.put(node.runnable, node.older);
+                } else {
+                    pendingRunnables.remove(node.runnable);
+                }
+                return;
+            }
+            for (RunnableNode newer = newest; newer != null; newer = newer.older) {
+                if (newer.older == node) {
+                    newer.older = node.older;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * hold an idle lane: runnables posted to it are kept until {@link #release()}.
+     *
+     * @return false if the lane was not idle.
+     */
+    boolean hold() {
+        return state.compareAndSet(STATE_IDLE, STATE_SCHEDULED);
+    }
+
+    /**
+     * make the lane idle again, scheduling it if runnables have been posted meanwhile.
+     */
+    void release() {
+        state.set(STATE_IDLE);
+        if (!isEmpty() && state.compareAndSet(STATE_IDLE, STATE_SCHEDULED)) {
+            schedule(manager);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (!DISPATCHED_UPDATER.compareAndSet(this, 1, 0)) {
+            //dispatched again while the first dispatch was not dropped: it already ran.
+            return;
+        }
+        try {
+            for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+                Node node = poll();
+                if (node == null) {
+                    break;
+                }
+                if (node instanceof RunnableNode && !((RunnableNode) node).canceled) {
+                    unIndex((RunnableNode) node);
+                }
+                node.run();
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * element of a lane. A node can be queued in a single lane at a time: an owner reusing a node has to
+     * {@link #claim()} it before posting it and {@link #unClaim()} it once run.
+     */
+    abstract static class Node implements Runnable {
+        volatile Node next;
+        volatile int claimed = 0;
+        private final static AtomicIntegerFieldUpdater<Node> CLAIMED_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "claimed");
+
+        /**
+         * @return false if the node is already in use.
+         */
+        final boolean claim() {
+            return CLAIMED_UPDATER.compareAndSet(this, 0, 1);
+        }
+
+        final void unClaim() {
+            claimed = 0;
+        }
+    }
+
+    final static class RunnableNode extends Node {
+        final Runnable runnable;
+        volatile boolean canceled = false;
+        //older pending node of the same runnable, guarded by the lane index.
+        RunnableNode older;
+
+        RunnableNode(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            if (runnable != null && !canceled) {
+                runnable.run();
+            }
+        }
+    }
+}
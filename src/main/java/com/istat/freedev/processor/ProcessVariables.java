@@ -0,0 +1,291 @@
+package com.istat.freedev.processor;
+
+import java.util.Arrays;
+
+/**
+ * Execution variables of a {@link Process}, storing int, long, double and boolean values unboxed.
+ * Built with a {@link Builder} and given as the single execution variable of a process, they are read back through
+ * {@link Process.ExecutionVariables}, whose typed getters read primitive values without boxing nor parsing:
+ * <pre>
+ * manager.execute(process, new ProcessVariables.Builder().putInt(42).putDouble(0.5).put("name").build());
+ * </pre>
+ * Variables given as objects, the usual way, are wrapped as they are.
+ */
+public final class ProcessVariables {
+    public final static int TYPE_OBJECT = 0, TYPE_INT = 1, TYPE_LONG = 2, TYPE_DOUBLE = 3, TYPE_BOOLEAN = 4;
+    final static ProcessVariables EMPTY = new ProcessVariables(new Object[0], null, null, 0);
+    final Object[] objects;
+    //raw bits of primitive values, and type of each variable. Both null when every variable is an object.
+    final long[] primitives;
+    final byte[] types;
+    final int count;
+
+    ProcessVariables(Object[] objects, long[] primitives, byte[] types, int count) {
+        this.objects = objects;
+        this.primitives = primitives;
+        this.types = types;
+        this.count = count;
+    }
+
+    /**
+     * @return the given variables, or a view of them if they are not a single {@link ProcessVariables}.
+     */
+    static ProcessVariables of(Object... vars) {
+        if (vars == null || vars.length == 0) {
+            return EMPTY;
+        }
+        if (vars.length == 1 && vars[0] instanceof ProcessVariables) {
+            return (ProcessVariables) vars[0];
+        }
+        return new ProcessVariables(vars, null, null, vars.length);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return one of the TYPE_* constants.
+     */
+    public int getType(int index) {
+        checkIndex(index);
+        return types == null ? TYPE_OBJECT : types[index];
+    }
+
+    public boolean isPrimitive(int index) {
+        return getType(index) != TYPE_OBJECT;
+    }
+
+    /**
+     * @return the variable at the given index, primitive values are boxed.
+     */
+    public Object get(int index) {
+        checkIndex(index);
+        switch (types == null ? TYPE_OBJECT : types[index]) {
+            case TYPE_INT:
+                return (int) primitives[index];
+            case TYPE_LONG:
+                return primitives[index];
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(primitives[index]);
+            case TYPE_BOOLEAN:
+                return primitives[index] != 0;
+            default:
+                return objects[index];
+        }
+    }
+
+    /**
+     * @throws NumberFormatException if the variable is not an int, or a value out of the int range.
+     */
+    public int getInt(int index) {
+        checkIndex(index);
+        long value;
+        switch (types == null ? TYPE_OBJECT : types[index]) {
+            case TYPE_INT:
+            case TYPE_BOOLEAN:
+                return (int) primitives[index];
+            case TYPE_LONG:
+                value = primitives[index];
+                break;
+            case TYPE_DOUBLE:
+                value = (long) Double.longBitsToDouble(primitives[index]);
+                break;
+            default:
+                Object var = objects[index];
+                if (var == null) {
+                    return 0;
+                }
+                if (!(var instanceof Number)) {
+                    return Integer.parseInt(String.valueOf(var));
+                }
+                if (var instanceof Integer || var instanceof Short || var instanceof Byte) {
+                    return ((Number) var).intValue();
+                }
+                value = ((Number) var).longValue();
+                break;
+        }
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Value out of int range, index=" + index + ", value=" + get(index));
+        }
+        return (int) value;
+    }
+
+    public long getLong(int index) {
+        checkIndex(index);
+        switch (types == null ? TYPE_OBJECT : types[index]) {
+            case TYPE_INT:
+            case TYPE_LONG:
+            case TYPE_BOOLEAN:
+                return primitives[index];
+            case TYPE_DOUBLE:
+                return (long) Double.longBitsToDouble(primitives[index]);
+            default:
+                Object var = objects[index];
+                if (var == null) {
+                    return 0;
+                }
+                if (var instanceof Number) {
+                    return ((Number) var).longValue();
+                }
+                return Long.valueOf(String.valueOf(var));
+        }
+    }
+
+    public float getFloat(int index) {
+        return (float) getDouble(index);
+    }
+
+    public double getDouble(int index) {
+        checkIndex(index);
+        switch (types == null ? TYPE_OBJECT : types[index]) {
+            case TYPE_INT:
+            case TYPE_LONG:
+            case TYPE_BOOLEAN:
+                return primitives[index];
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(primitives[index]);
+            default:
+                Object var = objects[index];
+                if (var == null) {
+                    return 0;
+                }
+                if (var instanceof Number) {
+                    return ((Number) var).doubleValue();
+                }
+                return Double.valueOf(String.valueOf(var));
+        }
+    }
+
+    public boolean getBoolean(int index) {
+        checkIndex(index);
+        switch (types == null ? TYPE_OBJECT : types[index]) {
+            case TYPE_OBJECT:
+                Object var = objects[index];
+                if (var instanceof Boolean) {
+                    return (Boolean) var;
+                }
+                return var != null && Boolean.parseBoolean(String.valueOf(var));
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(primitives[index]) != 0;
+            default:
+                return primitives[index] != 0;
+        }
+    }
+
+    /**
+     * @return the variables as objects, primitive values boxed. Plain variables are returned as given, not copied.
+     */
+    public Object[] toArray() {
+        if (types == null) {
+            return objects.length == count ? objects : Arrays.copyOf(objects, count);
+        }
+        Object[] array = new Object[count];
+        for (int i = 0; i < count; i++) {
+            array[i] = get(i);
+        }
+        return array;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new ArrayIndexOutOfBoundsException("executionVariables length=" + count + ", requested index=" + index);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    /**
+     * append variables, the first put is the variable 0.
+     */
+    public final static class Builder {
+        Object[] objects;
+        long[] primitives;
+        byte[] types;
+        int count = 0;
+
+        public Builder() {
+            this(4);
+        }
+
+        /**
+         * @param capacity expected number of variables
+         */
+        public Builder(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be greater than 0, given=" + capacity);
+            }
+            this.objects = new Object[capacity];
+            this.primitives = new long[capacity];
+            this.types = new byte[capacity];
+        }
+
+        public Builder put(Object value) {
+            int index = next(TYPE_OBJECT);
+            objects[index] = value;
+            return this;
+        }
+
+        public Builder putInt(int value) {
+            int index = next(TYPE_INT);
+            primitives[index] = value;
+            return this;
+        }
+
+        public Builder putLong(long value) {
+            int index = next(TYPE_LONG);
+            primitives[index] = value;
+            return this;
+        }
+
+        public Builder putDouble(double value) {
+            int index = next(TYPE_DOUBLE);
+            primitives[index] = Double.doubleToRawLongBits(value);
+            return this;
+        }
+
+        public Builder putBoolean(boolean value) {
+            int index = next(TYPE_BOOLEAN);
+            primitives[index] = value ? 1 : 0;
+            return this;
+        }
+
+        /**
+         * @return index of the new variable. The arrays may be replaced to grow, so they are read after this call.
+         */
+        private int next(int type) {
+            if (types == null) {
+                throw new IllegalStateException("Variables already built");
+            }
+            if (count == types.length) {
+                int capacity = count * 2;
+                objects = Arrays.copyOf(objects, capacity);
+                primitives = Arrays.copyOf(primitives, capacity);
+                types = Arrays.copyOf(types, capacity);
+            }
+            types[count] = (byte) type;
+            return count++;
+        }
+
+        /**
+         * @return the variables, the builder can't be used anymore.
+         */
+        public ProcessVariables build() {
+            if (types == null) {
+                throw new IllegalStateException("Variables already built");
+            }
+            ProcessVariables variables = new ProcessVariables(objects, primitives, types, count);
+            objects = null;
+            primitives = null;
+            types = null;
+            return variables;
+        }
+    }
+}
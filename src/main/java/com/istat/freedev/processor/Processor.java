@@ -1,8 +1,11 @@
 package com.istat.freedev.processor;
 
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
 import com.istat.freedev.processor.interfaces.RunnableDispatcher;
 
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -37,28 +40,62 @@ public class Processor {
     }
 
     Processor(String nameSpace, RunnableDispatcher runnableDispatcher) {
+        this(nameSpace, runnableDispatcher, null);
+    }
+
+    Processor(String nameSpace, RunnableDispatcher runnableDispatcher, ExecutionEngine executionEngine) {
         this.nameSpace = nameSpace;
-        this.processManager = new ProcessManager(nameSpace, runnableDispatcher);
+        this.processManager = new ProcessManager(nameSpace, runnableDispatcher, executionEngine);
     }
 
     public RunnableDispatcher getDispatcher() {
         return getProcessManager().getDispatcher();
     }
 
+    public ExecutionEngine getExecutionEngine() {
+        return getProcessManager().getExecutionEngine();
+    }
+
+    public long getDefaultTimeout() {
+        return getProcessManager().getDefaultTimeout();
+    }
+
+    /**
+     * Define the max running time of the process of this Processor which doesn't define their own.
+     * An expired process is aborted, see {@link Process#setTimeout(long)}.
+     *
+     * @param timeout max running time in millis, 0 for no limit.
+     */
+    public void setDefaultTimeout(long timeout) {
+        getProcessManager().setDefaultTimeout(timeout);
+    }
+
     //TODO si il est possible de trouver un meilleur nom qu eboot
     public final static Processor boot(String processorTag) {
         return boot(processorTag, null);
     }
 
     public final static Processor boot(String processorTag, RunnableDispatcher runnableDispatcher) {
+        return boot(processorTag, runnableDispatcher, null);
+    }
+
+    /**
+     * @param processorTag       the processor name space
+     * @param runnableDispatcher dispatcher used to deliver process notifications, {@link RunnableDispatcher#DEFAULT} if null.
+     * @param executionEngine    engine used to run process body, {@link ExecutionEngine#CALLER_RUNS} if null.
+     * @return a running processor for the given tag, using the given dispatcher and execution engine.
+     */
+    public final static Processor boot(String processorTag, RunnableDispatcher runnableDispatcher, ExecutionEngine executionEngine) {
         if (isUp(processorTag)) {
             Processor processor = nameProcessorMap.get(processorTag);
-            if (processor.getDispatcher() == runnableDispatcher ||
-                    (processor.getDispatcher() == RunnableDispatcher.DEFAULT && runnableDispatcher == null)) {
+            if ((processor.getDispatcher() == runnableDispatcher ||
+                    (processor.getDispatcher() == RunnableDispatcher.DEFAULT && runnableDispatcher == null)) &&
+                    (processor.getExecutionEngine() == executionEngine ||
+                            (processor.getExecutionEngine() == ExecutionEngine.CALLER_RUNS && executionEngine == null))) {
                 return processor;
             }
         }
-        Processor processor = new Processor(processorTag, runnableDispatcher);
+        Processor processor = new Processor(processorTag, runnableDispatcher, executionEngine);
         nameProcessorMap.put(processorTag, processor);
         return processor;
     }
@@ -91,6 +128,10 @@ public class Processor {
         return getProcessManager().execute(PID, process, vars);
     }
 
+    public final <T extends Process> List<T> executeAll(Collection<T> processes, Object... vars) {
+        return getProcessManager().executeAll(processes, vars);
+    }
+
     public final int shutDown() {
         onShutdown();
         int runningProcess = release();
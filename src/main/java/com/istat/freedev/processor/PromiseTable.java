@@ -0,0 +1,328 @@
+package com.istat.freedev.processor;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Promises of a {@link Process}, indexed by the state which trigger them.
+ * The well known STATE_* have a fixed slot, custom states given to {@link Process#notifyStateChanged(int)} fall into a map.
+ * A runnable has a single entry, shared by every state it is registered for, carrying its executed flags: as the
+ * historical executed runnable list, it run at most once while the process run, and once when it terminate.
+ * Running the promises of a state is linear in their count and doesn't lock nor allocate.
+ * Entries of a state are a growable array with a size index: registering a promise append it in amortised O(1),
+ * removing one copy the array, so a running iteration keep its own. Changes are serialised by the table monitor.
+ */
+final class PromiseTable {
+    final static int[] STATES = {
+            Process.STATE_STARTED,
+            Process.STATE_PROCESSING,
+            Process.STATE_SUCCESS,
+            Process.STATE_ERROR,
+            Process.STATE_FAILED,
+            Process.STATE_ABORTED,
+            Process.STATE_DROPPED,
+            Process.STATE_FLAG_FINISHED
+    };
+    final static Entry[] EMPTY = new Entry[0];
+    final static int INITIAL_SLOT_CAPACITY = 4;
+    final AtomicReferenceArray<Slot> slots = new AtomicReferenceArray<>(STATES.length);
+    final ConcurrentHashMap<Integer, Slot> customSlots = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<Runnable, Entry> entries = new ConcurrentHashMap<>();
+
+    static int slotIndex(int state) {
+        switch (state) {
+            case Process.STATE_STARTED:
+                return 0;
+            case Process.STATE_PROCESSING:
+                return 1;
+            case Process.STATE_SUCCESS:
+                return 2;
+            case Process.STATE_ERROR:
+                return 3;
+            case Process.STATE_FAILED:
+                return 4;
+            case Process.STATE_ABORTED:
+                return 5;
+            case Process.STATE_DROPPED:
+                return 6;
+            case Process.STATE_FLAG_FINISHED:
+                return 7;
+            default:
+                return -1;
+        }
+    }
+
+    private Slot getSlot(int state) {
+        int index = slotIndex(state);
+        return index >= 0 ? slots.get(index) : customSlots.get(state);
+    }
+
+    /**
+     * must be called with the table monitor held.
+     */
+    private Slot getOrCreateSlot(int state) {
+        Slot slot = getSlot(state);
+        if (slot == null) {
+            slot = new Slot();
+            int index = slotIndex(state);
+            if (index >= 0) {
+                slots.set(index, slot);
+            } else {
+                customSlots.put(state, slot);
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * register the runnable for each given state it is not registered for yet, all of them sharing its entry.
+     *
+     * @return the entry of the runnable.
+     */
+    synchronized Entry add(Runnable runnable, int... states) {
+        Entry entry = entries.get(runnable);
+        if (entry == null) {
+            entry = new Entry(runnable);
+            entries.put(runnable, entry);
+        }
+        for (int state : states) {
+            int index = slotIndex(state);
+            if (index >= 0) {
+                if ((entry.slotMask & (1 << index)) != 0) {
+                    continue;
+                }
+                entry.slotMask |= 1 << index;
+            } else {
+                Slot slot = customSlots.get(state);
+                //custom states are rare: a linear lookup is enough for them.
+                if (slot != null && slot.indexOf(entry) >= 0) {
+                    continue;
+                }
+                entry.customSlotCount++;
+            }
+            getOrCreateSlot(state).append(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * run promises of the given state which have not been executed yet in the given phase, and flag them executed.
+     * Each entry is run once even if several threads execute the same state.
+     *
+     * @param phase {@link Entry#PHASE_RUNNING} or {@link Entry#PHASE_FINISHED}
+     */
+    void execute(int state, int phase) {
+        Slot slot = getSlot(state);
+        if (slot == null) {
+            return;
+        }
+        //the size is published after the array, so reading it first give entries of that array. A clear meanwhile
+        //may leave a shorter one.
+        int size = slot.size;
+        Entry[] slotEntries = slot.entries;
+        size = Math.min(size, slotEntries.length);
+        for (int i = 0; i < size; i++) {
+            Entry entry = slotEntries[i];
+            if (entry == null) {
+                //the slot has been shrunk meanwhile.
+                return;
+            }
+            if (entry.markExecuted(phase)) {
+                entry.runnable.run();
+            }
+        }
+    }
+
+    /**
+     * run promises of the given state which have not been executed yet, without flagging them.
+     */
+    void precipitate(int state) {
+        Slot slot = getSlot(state);
+        if (slot == null) {
+            return;
+        }
+        int size = slot.size;
+        Entry[] slotEntries = slot.entries;
+        size = Math.min(size, slotEntries.length);
+        for (int i = 0; i < size; i++) {
+            Entry entry = slotEntries[i];
+            if (entry == null) {
+                return;
+            }
+            if (entry.executed == 0) {
+                entry.runnable.run();
+            }
+        }
+    }
+
+    /**
+     * make every promise executable again.
+     */
+    void resetExecuted() {
+        for (int i = 0; i < slots.length(); i++) {
+            resetExecuted(slots.get(i));
+        }
+        if (!customSlots.isEmpty()) {
+            for (Slot slot : customSlots.values()) {
+                resetExecuted(slot);
+            }
+        }
+    }
+
+    private static void resetExecuted(Slot slot) {
+        if (slot != null) {
+            int size = slot.size;
+            Entry[] slotEntries = slot.entries;
+            size = Math.min(size, slotEntries.length);
+            for (int i = 0; i < size && slotEntries[i] != null; i++) {
+                slotEntries[i].executed = 0;
+            }
+        }
+    }
+
+    /**
+     * remove every entry of the given runnable.
+     *
+     * @return true if at least one entry has been removed.
+     */
+    synchronized boolean remove(Runnable runnable) {
+        Entry entry = entries.remove(runnable);
+        if (entry == null) {
+            return false;
+        }
+        for (int index = 0; index < STATES.length; index++) {
+            if ((entry.slotMask & (1 << index)) != 0) {
+                slots.get(index).remove(entry);
+            }
+        }
+        entry.slotMask = 0;
+        if (entry.customSlotCount > 0) {
+            for (Slot slot : customSlots.values()) {
+                slot.remove(entry);
+            }
+            entry.customSlotCount = 0;
+        }
+        return true;
+    }
+
+    /**
+     * drop the promises of the given state. A runnable registered for no other state is forgotten, so registering it
+     * again start with fresh executed flags.
+     */
+    synchronized void clear(int state) {
+        int index = slotIndex(state);
+        Slot slot = index >= 0 ? slots.get(index) : customSlots.remove(state);
+        if (slot == null) {
+            return;
+        }
+        for (int i = 0; i < slot.size; i++) {
+            Entry entry = slot.entries[i];
+            if (index >= 0) {
+                entry.slotMask &= ~(1 << index);
+            } else {
+                entry.customSlotCount--;
+            }
+            if (entry.slotMask == 0 && entry.customSlotCount == 0) {
+                entries.remove(entry.runnable, entry);
+            }
+        }
+        if (index >= 0) {
+            slot.clear();
+        }
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            Slot slot = slots.get(i);
+            if (slot != null) {
+                slot.clear();
+            }
+        }
+        customSlots.clear();
+        entries.clear();
+    }
+
+    /**
+     * entries of a state. Changed with the table monitor held, read without it.
+     */
+    final static class Slot {
+        volatile Entry[] entries = EMPTY;
+        volatile int size = 0;
+
+        void append(Entry entry) {
+            Entry[] current = entries;
+            int size = this.size;
+            if (size == current.length) {
+                //grown by copy: an iteration over the previous array is not affected.
+                current = Arrays.copyOf(current, Math.max(INITIAL_SLOT_CAPACITY, current.length * 2));
+                entries = current;
+            }
+            current[size] = entry;
+            this.size = size + 1;
+        }
+
+        int indexOf(Entry entry) {
+            Entry[] current = entries;
+            for (int i = 0; i < size; i++) {
+                if (current[i] == entry) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void remove(Entry entry) {
+            int index = indexOf(entry);
+            if (index < 0) {
+                return;
+            }
+            //a new array of the same capacity, the one being iterated is left untouched.
+            Entry[] current = entries;
+            Entry[] updated = new Entry[current.length];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, size - index - 1);
+            entries = updated;
+            size--;
+        }
+
+        void clear() {
+            entries = EMPTY;
+            size = 0;
+        }
+    }
+
+    final static class Entry {
+        /**
+         * executed flags: a promise run once while the process run, and once when it terminate.
+         */
+        final static int PHASE_RUNNING = 1, PHASE_FINISHED = 2;
+        final Runnable runnable;
+        volatile int executed = 0;
+        //slots holding the entry, changed with the table monitor held: a bit per fixed slot, and a count of custom ones.
+        int slotMask = 0;
+        int customSlotCount = 0;
+        private final static AtomicIntegerFieldUpdater<Entry> EXECUTED_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Entry.class, "executed");
+
+        Entry(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        /**
+         * @return true if the caller has to run the entry, false if it was already executed in the given phase.
+         */
+        boolean markExecuted(int phase) {
+            while (true) {
+                int executed = this.executed;
+                if ((executed & phase) != 0) {
+                    return false;
+                }
+                if (EXECUTED_UPDATER.compareAndSet(this, executed, executed | phase)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.PublishCallback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Values published by a {@link Process}, waiting to be delivered to its {@link PublishCallback}.
+ * A delivery has to be scheduled only when the channel goes from empty to non empty, so a process publishing faster
+ * than its dispatcher deliver cost a single post per delivery, whatever the number of published values.
+ */
+final class PublishChannel {
+    final static Object NOTHING = new Object();
+    final static PublishCallback[] NO_CALLBACKS = new PublishCallback[0];
+    private final static AtomicReferenceFieldUpdater<PublishChannel, Object> LATEST_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(PublishChannel.class, Object.class, "latest");
+    private final static AtomicReferenceFieldUpdater<PublishChannel, PublishCallback[]> CALLBACKS_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(PublishChannel.class, PublishCallback[].class, "callbacks");
+    volatile int mode = Process.PUBLISH_MODE_CONFLATE;
+    volatile long interval = 0;
+    volatile long lastDeliveryTime = 0;
+    volatile PublishCallback[] callbacks = NO_CALLBACKS;
+    //conflated value, NOTHING when no value is pending.
+    volatile Object latest = NOTHING;
+    //batched values, guarded by the channel. Swapped on each delivery, so they are reused. Unbounded: every batched
+    //value has to be delivered, see Process#setPublishMode.
+    ArrayList<Object> pending, delivering;
+
+    /**
+     * @return true if the channel was empty: a delivery has to be scheduled.
+     */
+    boolean offer(Object value) {
+        if (mode == Process.PUBLISH_MODE_CONFLATE) {
+            return LATEST_UPDATER.getAndSet(this, value) == NOTHING;
+        }
+        synchronized (this) {
+            if (pending == null) {
+                pending = new ArrayList<>();
+                delivering = new ArrayList<>();
+            }
+            pending.add(value);
+            return pending.size() == 1;
+        }
+    }
+
+    /**
+     * @return time to wait before the next delivery, to respect the channel interval.
+     */
+    long getDeliveryDelay() {
+        long interval = this.interval;
+        if (interval <= 0) {
+            return 0;
+        }
+        return Math.max(lastDeliveryTime + interval - System.currentTimeMillis(), 0);
+    }
+
+    /**
+     * deliver pending values, from the process lane only.
+     */
+    @SuppressWarnings("unchecked")
+    void deliver() {
+        if (interval > 0) {
+            lastDeliveryTime = System.currentTimeMillis();
+        }
+        Object value = LATEST_UPDATER.getAndSet(this, NOTHING);
+        if (value != NOTHING) {
+            for (PublishCallback callback : callbacks) {
+                callback.onPublished(value);
+            }
+        }
+        ArrayList<Object> values;
+        synchronized (this) {
+            if (pending == null || pending.isEmpty()) {
+                return;
+            }
+            values = pending;
+            pending = delivering;
+            delivering = values;
+        }
+        try {
+            for (PublishCallback callback : callbacks) {
+                callback.onPublishedBatch(values);
+            }
+        } finally {
+            values.clear();
+        }
+    }
+
+    void addCallback(PublishCallback callback) {
+        while (true) {
+            PublishCallback[] current = callbacks;
+            PublishCallback[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = callback;
+            if (CALLBACKS_UPDATER.compareAndSet(this, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    boolean removeCallback(PublishCallback callback) {
+        while (true) {
+            PublishCallback[] current = callbacks;
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].equals(callback)) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return false;
+            }
+            PublishCallback[] updated = current.length == 1 ? NO_CALLBACKS : new PublishCallback[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            if (CALLBACKS_UPDATER.compareAndSet(this, current, updated)) {
+                return true;
+            }
+        }
+    }
+
+    void removeCallbacks() {
+        callbacks = NO_CALLBACKS;
+    }
+
+    /**
+     * drop the pending values.
+     */
+    void clear() {
+        latest = NOTHING;
+        synchronized (this) {
+            if (pending != null) {
+                pending.clear();
+            }
+        }
+    }
+
+    void reset() {
+        clear();
+        removeCallbacks();
+        mode = Process.PUBLISH_MODE_CONFLATE;
+        interval = 0;
+        lastDeliveryTime = 0;
+    }
+}
@@ -0,0 +1,72 @@
+package com.istat.freedev.processor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bound the number of retries a {@link ProcessManager} does, relatively to the number of process submitted to it,
+ * see {@link ProcessManager#setRetryBudget(RetryBudget)}.
+ * Each submission deposit {@link #getRatio()} token, each retry withdraw one, and the balance can't exceed
+ * {@link #getCapacity()}: when a downstream service fail for every process, retries stay a fraction of the
+ * submitted work instead of multiplying it.
+ */
+public class RetryBudget {
+    //tokens are counted in thousandths.
+    final static long UNIT = 1000;
+    final AtomicLong balance;
+    final long deposit, capacity;
+    final double ratio;
+
+    /**
+     * @param ratio    retries allowed per submitted process, for example 0.1 for one retry every 10 submissions
+     * @param capacity max number of retries allowed in a burst, also the initial balance.
+     */
+    public RetryBudget(double ratio, int capacity) {
+        if (ratio < 0) {
+            throw new IllegalArgumentException("ratio can't be negative, given=" + ratio);
+        }
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity can't be negative, given=" + capacity);
+        }
+        this.ratio = ratio;
+        this.deposit = (long) (ratio * UNIT);
+        this.capacity = capacity * UNIT;
+        this.balance = new AtomicLong(this.capacity);
+    }
+
+    public double getRatio() {
+        return ratio;
+    }
+
+    public int getCapacity() {
+        return (int) (capacity / UNIT);
+    }
+
+    /**
+     * @return number of retries currently allowed.
+     */
+    public int getAvailableRetries() {
+        return (int) (balance.get() / UNIT);
+    }
+
+    void onProcessSubmitted() {
+        while (true) {
+            long current = balance.get();
+            long updated = Math.min(current + deposit, capacity);
+            if (updated == current || balance.compareAndSet(current, updated)) {
+                return;
+            }
+        }
+    }
+
+    boolean tryAcquireRetry() {
+        while (true) {
+            long current = balance.get();
+            if (current < UNIT) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - UNIT)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.istat.freedev.processor;
+
+import java.util.Random;
+
+/**
+ * Define how a {@link Process} ending with {@link Process#STATE_ERROR} or {@link Process#STATE_FAILED} is executed again,
+ * see {@link Process#setRetryPolicy(RetryPolicy)}.
+ * The same process instance is re-executed, keeping its id, callbacks and promises: they are only notified of the
+ * outcome of the last attempt.
+ * <p>
+ * Attempt n (n &gt;= 1 being the first retry) wait min(initialDelay * multiplier^(n-1), maxDelay) millis, minus a random
+ * part of up to jitter * delay, so process failing together don't retry together.
+ */
+public class RetryPolicy {
+    public final static long DEFAULT_INITIAL_DELAY = 100, DEFAULT_MAX_DELAY = 30000;
+    public final static double DEFAULT_MULTIPLIER = 2, DEFAULT_JITTER = 0.5;
+    final static Random random = new Random();
+
+    public interface RetryCondition {
+        /**
+         * @param process the failing process
+         * @param cause   the error or the exception the process failed with
+         * @param attempt number of executions already done, the first one included
+         * @return true if the process has to be executed again.
+         */
+        boolean shouldRetry(Process process, Throwable cause, int attempt);
+    }
+
+    final int maxAttempts;
+    long initialDelay = DEFAULT_INITIAL_DELAY;
+    long maxDelay = DEFAULT_MAX_DELAY;
+    double multiplier = DEFAULT_MULTIPLIER;
+    double jitter = DEFAULT_JITTER;
+    RetryCondition retryCondition;
+
+    /**
+     * @param maxAttempts max number of executions of a process, the first one included.
+     */
+    public RetryPolicy(int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be greater than 0, given=" + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param initialDelay delay before the first retry, in millis
+     * @param multiplier   factor applied to the delay at each new retry, 1 for a constant delay
+     * @param maxDelay     max delay between two attempts, in millis
+     */
+    public RetryPolicy setBackoff(long initialDelay, double multiplier, long maxDelay) {
+        if (initialDelay < 0 || maxDelay < initialDelay) {
+            throw new IllegalArgumentException("delays must verify 0 <= initialDelay <= maxDelay, given=" + initialDelay + ", " + maxDelay);
+        }
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("multiplier can't be less than 1, given=" + multiplier);
+        }
+        this.initialDelay = initialDelay;
+        this.multiplier = multiplier;
+        this.maxDelay = maxDelay;
+        return this;
+    }
+
+    /**
+     * @param jitter part of each delay which is randomized, between 0 (no jitter) and 1 (full jitter).
+     */
+    public RetryPolicy setJitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1, given=" + jitter);
+        }
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * @param retryCondition condition a failure has to match to be retried, null to retry every failure.
+     */
+    public RetryPolicy setRetryCondition(RetryCondition retryCondition) {
+        this.retryCondition = retryCondition;
+        return this;
+    }
+
+    /**
+     * retry only failures caused by one of the given types.
+     */
+    @SafeVarargs
+    public final RetryPolicy retryOn(final Class<? extends Throwable>... causeClasses) {
+        return setRetryCondition(new RetryCondition() {
+            @Override
+            public boolean shouldRetry(Process process, Throwable cause, int attempt) {
+                for (Class<? extends Throwable> causeClass : causeClasses) {
+                    if (causeClass.isInstance(cause)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    boolean shouldRetry(Process process, Throwable cause, int attempt) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+        RetryCondition retryCondition = this.retryCondition;
+        return retryCondition == null || retryCondition.shouldRetry(process, cause, attempt);
+    }
+
+    /**
+     * @param attempt number of executions already done
+     * @return delay to wait before the next attempt, in millis.
+     */
+    long getDelay(int attempt) {
+        double delay = initialDelay * Math.pow(multiplier, Math.max(attempt - 1, 0));
+        delay = Math.min(delay, maxDelay);
+        if (jitter > 0) {
+            delay -= delay * jitter * random.nextDouble();
+        }
+        return (long) delay;
+    }
+}
@@ -0,0 +1,57 @@
+package com.istat.freedev.processor.interfaces;
+
+import com.istat.freedev.processor.utils.PooledExecutionEngine;
+import com.istat.freedev.processor.utils.ThreadPerProcessExecutionEngine;
+
+import java.util.Collection;
+
+/**
+ * Define where {@link com.istat.freedev.processor.Process#onExecute} run once a process has been submitted to a
+ * {@link com.istat.freedev.processor.ProcessManager}.
+ */
+public interface ExecutionEngine {
+    void execute(Runnable task);
+
+    /**
+     * execute the body of a process with the given {@link com.istat.freedev.processor.Process#getPriority() priority}.
+     * engines which don't order by priority simply ignore it.
+     */
+    default void execute(Runnable task, int priority) {
+        execute(task);
+    }
+
+    /**
+     * execute a batch of process bodies sharing the same priority, as submitted by
+     * {@link com.istat.freedev.processor.ProcessManager#executeAll(java.util.Collection, Object...)}.
+     * engines able to take a whole batch at once override it, the default one execute tasks one by one.
+     */
+    default void execute(Collection<? extends Runnable> tasks, int priority) {
+        for (Runnable task : tasks) {
+            execute(task, priority);
+        }
+    }
+
+    /**
+     * run the process body directly on the submitter thread (historical behaviour).
+     */
+    ExecutionEngine CALLER_RUNS = new ExecutionEngine() {
+        @Override
+        public void execute(Runnable task) {
+            if (task != null) {
+                task.run();
+            }
+        }
+    };
+
+    /**
+     * run the process body on a pool shared by every Processor which use it.
+     * for a pool owned by a single Processor, use a dedicated {@link PooledExecutionEngine}.
+     */
+    ExecutionEngine POOLED = new PooledExecutionEngine("Processor-pooled", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * run each process body on its own thread (a virtual thread when the VM support it).
+     * process flagged {@link com.istat.freedev.processor.Process#FLAG_BLOCKING} always use this engine.
+     */
+    ExecutionEngine THREAD_PER_PROCESS = new ThreadPerProcessExecutionEngine();
+}
@@ -2,13 +2,31 @@ package com.istat.freedev.processor.interfaces;
 
 import com.istat.freedev.processor.Process;
 
+import java.util.List;
+
 /**
  * Created by istat on 14/10/16.
  */
 
 public interface ProcessListener {
+    /**
+     * state mask accepting every process state, see {@link com.istat.freedev.processor.ProcessManager#registerProcessListener(ProcessListener, int, Class)}
+     */
+    int ANY_STATE = 0;
+
     default void onProcessEnqueued(Process process, String id){}
 
+    /**
+     * called once for a batch of process submitted together, see {@link com.istat.freedev.processor.ProcessManager#executeAll(java.util.Collection, Object...)}.
+     * By default, notify each process as if it had been submitted alone.
+     */
+    default void onProcessesEnqueued(List<Process> processes) {
+        for (Process process : processes) {
+            onProcessStateChanged(process, process.getId(), process.getState());
+            onProcessEnqueued(process, process.getId());
+        }
+    }
+
     default void onProcessStarted(Process process, String id) {}
 
     default void onProcessStateChanged(Process process, String id, int state) {}
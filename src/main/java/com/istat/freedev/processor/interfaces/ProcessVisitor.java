@@ -0,0 +1,14 @@
+package com.istat.freedev.processor.interfaces;
+
+import com.istat.freedev.processor.Process;
+
+/**
+ * Visit running process of a {@link com.istat.freedev.processor.ProcessManager} without building any list.
+ */
+public interface ProcessVisitor<T extends Process<?, ?>> {
+    /**
+     * @param process a running process
+     * @return true to continue the visit, false to stop it.
+     */
+    boolean onVisit(T process);
+}
@@ -12,6 +12,17 @@ public interface Processable<Result, Error extends Throwable> {
 
     void addProcessCallback(ProcessCallback<Result, Error> executionListener);
 
+    /**
+     * ignored by default, by processable which don't publish anything.
+     */
+    default <T> void addPublishCallback(PublishCallback<T> callback) {
+
+    }
+
+    default boolean removePublishCallback(PublishCallback callback) {
+        return false;
+    }
+
     Process.ExecutionVariables getExecutionVariables();
 
 
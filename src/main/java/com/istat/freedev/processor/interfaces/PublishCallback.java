@@ -0,0 +1,24 @@
+package com.istat.freedev.processor.interfaces;
+
+import java.util.List;
+
+/**
+ * receive the progress and partial results published by a running process, see
+ * {@link com.istat.freedev.processor.Process#publish(Object)}. Called from the process dispatcher, in publication order.
+ */
+public interface PublishCallback<T> {
+    /**
+     * called with the latest published value, values published meanwhile being dropped.
+     */
+    void onPublished(T value);
+
+    /**
+     * called, in {@link com.istat.freedev.processor.Process#PUBLISH_MODE_BATCH}, with every value published since the
+     * previous call. The list is reused once the call return, don't keep it.
+     */
+    default void onPublishedBatch(List<T> values) {
+        for (int i = 0; i < values.size(); i++) {
+            onPublished(values.get(i));
+        }
+    }
+}
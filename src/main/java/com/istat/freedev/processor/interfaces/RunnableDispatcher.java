@@ -8,6 +8,14 @@ import com.istat.freedev.processor.utils.ProcessTools;
 public interface RunnableDispatcher {
     void dispatch(Runnable runnable, long delay);
 
+    /**
+     * dispatch a runnable on behalf of a process with the given {@link com.istat.freedev.processor.Process#getPriority() priority}.
+     * dispatchers which don't order by priority simply ignore it.
+     */
+    default void dispatch(Runnable runnable, long delay, int priority) {
+        dispatch(runnable, delay);
+    }
+
     void cancel(Runnable runnable);
 
     void release();
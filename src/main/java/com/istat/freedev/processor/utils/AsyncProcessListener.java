@@ -0,0 +1,269 @@
+package com.istat.freedev.processor.utils;
+
+import com.istat.freedev.processor.Process;
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.ProcessListener;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link ProcessListener} decorator delivering events to the wrapped listener asynchronously: events are pushed into a
+ * bounded queue, drained by a task run on an {@link ExecutionEngine}. A slow listener so doesn't slow down the manager
+ * notifying it anymore, events are delivered in order, by a single drain task at a time.
+ * <p>
+ * When the queue is full, the {@link OverflowPolicy} decide what happen to the new event.
+ */
+public class AsyncProcessListener implements ProcessListener {
+    public final static int DEFAULT_CAPACITY = 256;
+    public final static long DEFAULT_BLOCK_TIMEOUT = 1000;
+    final static int EVENT_ENQUEUED = 0, EVENT_STARTED = 1, EVENT_STATE_CHANGED = 2, EVENT_FINISHED = 3;
+
+    public enum OverflowPolicy {
+        /**
+         * the new event is dropped.
+         */
+        DROP,
+        /**
+         * the new event replace the latest pending event of the same process, so the listener receive the latest state
+         * of each process. The new event is dropped if no event of its process is pending.
+         */
+        CONFLATE,
+        /**
+         * the notifying thread wait for room in the queue, at most {@link #getBlockTimeout()} millis, then the event is dropped.
+         */
+        BLOCK
+    }
+
+    final ProcessListener listener;
+    final ExecutionEngine engine;
+    final int capacity;
+    final OverflowPolicy overflowPolicy;
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition notFull = lock.newCondition();
+    final ArrayDeque<Event> queue = new ArrayDeque<>();
+    final HashMap<String, Event> latestEvents = new HashMap<>();
+    final AtomicLong droppedCount = new AtomicLong(), conflatedCount = new AtomicLong();
+    volatile long blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+    boolean draining = false;
+
+    public AsyncProcessListener(ProcessListener listener) {
+        this(listener, DEFAULT_CAPACITY, OverflowPolicy.DROP);
+    }
+
+    public AsyncProcessListener(ProcessListener listener, int capacity, OverflowPolicy overflowPolicy) {
+        this(listener, capacity, overflowPolicy, ExecutionEngine.POOLED);
+    }
+
+    /**
+     * @param listener       the listener to deliver events to
+     * @param capacity       max number of pending events
+     * @param overflowPolicy what to do with a new event when the queue is full
+     * @param engine         engine running the drain task
+     */
+    public AsyncProcessListener(ProcessListener listener, int capacity, OverflowPolicy overflowPolicy, ExecutionEngine engine) {
+        if (listener == null) {
+            throw new NullPointerException("listener can't be null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0, given=" + capacity);
+        }
+        this.listener = listener;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy != null ? overflowPolicy : OverflowPolicy.DROP;
+        this.engine = engine != null ? engine : ExecutionEngine.POOLED;
+    }
+
+    public ProcessListener getListener() {
+        return listener;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getBlockTimeout() {
+        return blockTimeout;
+    }
+
+    public void setBlockTimeout(long blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of events which have not been delivered because of a full queue.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return number of pending events replaced by a newer event of the same process, see {@link OverflowPolicy#CONFLATE}.
+     */
+    public long getConflatedCount() {
+        return conflatedCount.get();
+    }
+
+    @Override
+    public void onProcessEnqueued(Process process, String id) {
+        offer(new Event(EVENT_ENQUEUED, process, id, process.getState()));
+    }
+
+    @Override
+    public void onProcessStarted(Process process, String id) {
+        offer(new Event(EVENT_STARTED, process, id, process.getState()));
+    }
+
+    @Override
+    public void onProcessStateChanged(Process process, String id, int state) {
+        offer(new Event(EVENT_STATE_CHANGED, process, id, state));
+    }
+
+    @Override
+    public void onProcessFinished(Process process, String id) {
+        offer(new Event(EVENT_FINISHED, process, id, process.getState()));
+    }
+
+    void offer(Event event) {
+        boolean startDrain = false;
+        lock.lock();
+        try {
+            if (queue.size() >= capacity && !makeRoom(event)) {
+                return;
+            }
+            queue.add(event);
+            if (event.id != null) {
+                latestEvents.put(event.id, event);
+            }
+            if (!draining) {
+                draining = startDrain = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (startDrain) {
+            engine.execute(drainTask);
+        }
+    }
+
+    /**
+     * apply the overflow policy, must be called with the lock held.
+     *
+     * @return true if the event has to be enqueued.
+     */
+    private boolean makeRoom(Event event) {
+        switch (overflowPolicy) {
+            case CONFLATE:
+                Event latest = event.id != null ? latestEvents.get(event.id) : null;
+                if (latest != null) {
+                    latest.type = event.type;
+                    latest.state = event.state;
+                    conflatedCount.incrementAndGet();
+                    return false;
+                }
+                break;
+            case BLOCK:
+                long remaining = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+                try {
+                    while (queue.size() >= capacity && remaining > 0) {
+                        remaining = notFull.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (queue.size() < capacity) {
+                    return true;
+                }
+                break;
+        }
+        droppedCount.incrementAndGet();
+        return false;
+    }
+
+    private void deliver(Event event) {
+        switch (event.type) {
+            case EVENT_ENQUEUED:
+                listener.onProcessEnqueued(event.process, event.id);
+                break;
+            case EVENT_STARTED:
+                listener.onProcessStarted(event.process, event.id);
+                break;
+            case EVENT_STATE_CHANGED:
+                listener.onProcessStateChanged(event.process, event.id, event.state);
+                break;
+            case EVENT_FINISHED:
+                listener.onProcessFinished(event.process, event.id);
+                break;
+        }
+    }
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                Event event;
+                lock.lock();
+                try {
+                    event = queue.poll();
+                    if (event == null) {
+                        draining = false;
+                        return;
+                    }
+                    if (event.id != null && latestEvents.get(event.id) == event) {
+                        latestEvents.remove(event.id);
+                    }
+                    notFull.signal();
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    deliver(event);
+                } catch (RuntimeException e) {
+                    //a failing listener must not stall the events of the other process.
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                } catch (Error e) {
+                    //left to the thread, the next event offered start a new drain.
+                    lock.lock();
+                    try {
+                        draining = false;
+                    } finally {
+                        lock.unlock();
+                    }
+                    throw e;
+                }
+            }
+        }
+    };
+
+    final static class Event {
+        final Process process;
+        final String id;
+        int type;
+        int state;
+
+        Event(int type, Process process, String id, int state) {
+            this.type = type;
+            this.process = process;
+            this.id = id;
+            this.state = state;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.istat.freedev.processor.utils;
+
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link RunnableDispatcher} backed by a {@link ScheduledThreadPoolExecutor}.
+ * Delays are honoured, {@link #cancel(Runnable)} removes every pending dispatch of the given runnable
+ * and {@link #release()} drops pending work then waits, at most {@link #getReleaseTimeout()} millis,
+ * for the runnables already running.
+ */
+public class ExecutorDispatcher implements RunnableDispatcher {
+    public final static long DEFAULT_RELEASE_TIMEOUT = 1000;
+    final static AtomicInteger dispatcherCount = new AtomicInteger();
+    final ScheduledThreadPoolExecutor executor;
+    final ConcurrentHashMap<Runnable, TaskList> pendingTasks = new ConcurrentHashMap<>();
+    final AtomicInteger runningTaskCount = new AtomicInteger();
+    final ReentrantLock drainLock = new ReentrantLock();
+    final Condition drained = drainLock.newCondition();
+    long releaseTimeout = DEFAULT_RELEASE_TIMEOUT;
+
+    public ExecutorDispatcher() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ExecutorDispatcher(int corePoolSize) {
+        if (corePoolSize <= 0) {
+            throw new IllegalArgumentException("corePoolSize must be greater than 0, given=" + corePoolSize);
+        }
+        final String namePrefix = "ExecutorDispatcher-" + dispatcherCount.incrementAndGet() + "-";
+        this.executor = new ScheduledThreadPoolExecutor(corePoolSize, new ThreadFactory() {
+            final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new WorkerThread(runnable, namePrefix + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void setReleaseTimeout(long releaseTimeout) {
+        this.releaseTimeout = releaseTimeout;
+    }
+
+    public long getReleaseTimeout() {
+        return releaseTimeout;
+    }
+
+    public int getCorePoolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    public int getPendingCount() {
+        int count = 0;
+        for (TaskList tasks : pendingTasks.values()) {
+            synchronized (tasks) {
+                count += tasks.size();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void dispatch(Runnable runnable, long delay) {
+        if (runnable == null) {
+            return;
+        }
+        DispatchTask task = new DispatchTask(runnable);
+        while (true) {
+            TaskList tasks = pendingTasks.get(runnable);
+            if (tasks == null) {
+                TaskList newTasks = new TaskList();
+                tasks = pendingTasks.putIfAbsent(runnable, newTasks);
+                if (tasks == null) {
+                    tasks = newTasks;
+                }
+            }
+            synchronized (tasks) {
+                if (!tasks.dead) {
+                    tasks.add(task);
+                    break;
+                }
+            }
+        }
+        task.future = executor.schedule(task, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void cancel(Runnable runnable) {
+        if (runnable == null) {
+            return;
+        }
+        TaskList tasks = pendingTasks.remove(runnable);
+        if (tasks != null) {
+            synchronized (tasks) {
+                tasks.dead = true;
+                for (DispatchTask task : tasks) {
+                    task.cancel();
+                }
+                tasks.clear();
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        Iterator<Runnable> iterator = pendingTasks.keySet().iterator();
+        while (iterator.hasNext()) {
+            cancel(iterator.next());
+        }
+        executor.purge();
+        awaitRunningTasks(releaseTimeout);
+    }
+
+    /**
+     * release pending work and stop the underlying executor. The dispatcher can't be used anymore after this call.
+     */
+    public void shutDown() {
+        release();
+        executor.shutdown();
+    }
+
+    public boolean isShutDown() {
+        return executor.isShutdown();
+    }
+
+    private boolean awaitRunningTasks(long timeout) {
+        if (isDispatcherThread()) {
+            //waiting from one of our own worker would only wait for itself.
+            return runningTaskCount.get() <= 1;
+        }
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        drainLock.lock();
+        try {
+            while (runningTaskCount.get() > 0 && remaining > 0) {
+                remaining = drained.awaitNanos(remaining);
+            }
+            return runningTaskCount.get() == 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private boolean isDispatcherThread() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof WorkerThread && ((WorkerThread) thread).getDispatcher() == this;
+    }
+
+    final class WorkerThread extends Thread {
+        WorkerThread(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+
+        ExecutorDispatcher getDispatcher() {
+            return ExecutorDispatcher.this;
+        }
+    }
+
+    final static class TaskList extends ArrayList<DispatchTask> {
+        private final static long serialVersionUID = 1L;
+        boolean dead = false;
+
+        TaskList() {
+            super(1);
+        }
+    }
+
+    final class DispatchTask implements Runnable {
+        final Runnable runnable;
+        volatile ScheduledFuture<?> future;
+        volatile boolean canceled = false;
+
+        DispatchTask(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        void cancel() {
+            canceled = true;
+            ScheduledFuture<?> future = this.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            TaskList tasks = pendingTasks.get(runnable);
+            if (tasks != null) {
+                synchronized (tasks) {
+                    tasks.remove(this);
+                    if (tasks.isEmpty() && !tasks.dead) {
+                        tasks.dead = true;
+                        pendingTasks.remove(runnable, tasks);
+                    }
+                }
+            }
+            if (canceled) {
+                return;
+            }
+            runningTaskCount.incrementAndGet();
+            try {
+                runnable.run();
+            } catch (Throwable e) {
+                //the scheduled future would keep it silently: report it as the thread would.
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            } finally {
+                if (runningTaskCount.decrementAndGet() == 0) {
+                    drainLock.lock();
+                    try {
+                        drained.signalAll();
+                    } finally {
+                        drainLock.unlock();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package com.istat.freedev.processor.utils;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Timer made for a large amount of pending delays, as the ones created by {@link com.istat.freedev.processor.ProcessManager#postDelayed(Runnable, long)}.
+ * Scheduling and cancellation are O(1): timeouts are hashed into a wheel of buckets, and the wheel worker expire a whole
+ * bucket at each tick. A delay is so accurate to one tick duration.
+ * <p>
+ * Expired tasks are handed to the task engine of the timer, never run on its worker thread: a slow task doesn't delay
+ * the other timeouts. The worker thread is started on demand and stop itself when no timeout is pending.
+ */
+public class HashedWheelTimer {
+    public final static long DEFAULT_TICK_DURATION_MILLIS = 10;
+    public final static int DEFAULT_TICKS_PER_WHEEL = 512;
+    public final static long TASK_THREAD_KEEP_ALIVE_SECONDS = 30;
+    public final static int DEFAULT_MAX_TASK_THREADS_PER_PROCESSOR = 4;
+    private final static int WORKER_STATE_IDLE = 0, WORKER_STATE_STARTED = 1, WORKER_STATE_STOPPED = 2;
+    private final static int MAX_TRANSFER_PER_TICK = 100000;
+    private final static AtomicIntegerFieldUpdater<HashedWheelTimer> WORKER_STATE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(HashedWheelTimer.class, "workerState");
+    private final static AtomicInteger timerCount = new AtomicInteger();
+    private static volatile HashedWheelTimer defaultTimer;
+
+    final Bucket[] wheel;
+    final int mask;
+    final long tickDuration;
+    final long startTime = System.nanoTime();
+    final ConcurrentLinkedQueue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    final ConcurrentLinkedQueue<Timeout> canceledTimeouts = new ConcurrentLinkedQueue<>();
+    final AtomicInteger pendingCount = new AtomicInteger();
+    final String name;
+    final ExecutionEngine taskEngine;
+    final ThreadPoolExecutor taskExecutor;
+    final int baseTaskThreadCount;
+    final int maxTaskThreadCount;
+    volatile int workerState = WORKER_STATE_IDLE;
+    long tick;
+
+    public HashedWheelTimer() {
+        this(DEFAULT_TICK_DURATION_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    /**
+     * @param tickDuration  timer resolution
+     * @param unit          unit of tickDuration
+     * @param ticksPerWheel number of buckets, rounded up to a power of two
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        this(tickDuration, unit, ticksPerWheel, null);
+    }
+
+    /**
+     * @param tickDuration  timer resolution
+     * @param unit          unit of tickDuration
+     * @param ticksPerWheel number of buckets, rounded up to a power of two
+     * @param taskEngine    engine running the expired tasks, it must not run them on the calling thread. null to use a
+     *                      pool owned by the timer, see {@link #adjustTaskThreads()}.
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel, ExecutionEngine taskEngine) {
+        this(tickDuration, unit, ticksPerWheel, taskEngine,
+                DEFAULT_MAX_TASK_THREADS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param tickDuration       timer resolution
+     * @param unit               unit of tickDuration
+     * @param ticksPerWheel      number of buckets, rounded up to a power of two
+     * @param maxTaskThreadCount maximum number of threads of the pool owned by the timer, expired tasks wait beyond it.
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel, int maxTaskThreadCount) {
+        this(tickDuration, unit, ticksPerWheel, null, maxTaskThreadCount);
+    }
+
+    private HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel, ExecutionEngine taskEngine, int maxTaskThreadCount) {
+        if (taskEngine == ExecutionEngine.CALLER_RUNS) {
+            throw new IllegalArgumentException("taskEngine can't run expired tasks on the timer thread");
+        }
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0, given=" + tickDuration);
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("ticksPerWheel must be between 1 and 2^30, given=" + ticksPerWheel);
+        }
+        if (maxTaskThreadCount <= 0) {
+            throw new IllegalArgumentException("maxTaskThreadCount must be greater than 0, given=" + maxTaskThreadCount);
+        }
+        this.maxTaskThreadCount = maxTaskThreadCount;
+        this.baseTaskThreadCount = Math.min(Runtime.getRuntime().availableProcessors(), maxTaskThreadCount);
+        int wheelSize = 1;
+        while (wheelSize < ticksPerWheel) {
+            wheelSize <<= 1;
+        }
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheelSize - 1;
+        this.tickDuration = unit.toNanos(tickDuration);
+        this.name = "HashedWheelTimer-" + timerCount.incrementAndGet();
+        if (taskEngine != null) {
+            this.taskExecutor = null;
+            this.taskEngine = taskEngine;
+        } else {
+            this.taskExecutor = createTaskExecutor(name + "-task-", baseTaskThreadCount);
+            this.taskEngine = new ExecutionEngine() {
+                @Override
+                public void execute(Runnable task) {
+                    taskExecutor.execute(task);
+                }
+            };
+        }
+    }
+
+    private static ThreadPoolExecutor createTaskExecutor(final String namePrefix, int threadCount) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
+                TASK_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    final AtomicInteger threadIndex = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, namePrefix + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * called on each tick: when every task thread of the timer is busy while tasks wait, a thread is added, so a slow
+     * task delay the next ones by one tick at most, until {@link #getMaxTaskThreadCount()} threads: tasks then wait
+     * in the queue. Extra threads are removed once the tasks don't wait anymore.
+     */
+    private void adjustTaskThreads() {
+        ThreadPoolExecutor executor = taskExecutor;
+        if (executor == null) {
+            return;
+        }
+        int threadCount = executor.getCorePoolSize();
+        if (!executor.getQueue().isEmpty()) {
+            if (threadCount < maxTaskThreadCount && executor.getActiveCount() >= threadCount) {
+                executor.setMaximumPoolSize(threadCount + 1);
+                executor.setCorePoolSize(threadCount + 1);
+            }
+        } else if (threadCount > baseTaskThreadCount && executor.getActiveCount() < threadCount) {
+            executor.setCorePoolSize(threadCount - 1);
+            executor.setMaximumPoolSize(threadCount - 1);
+        }
+    }
+
+    /**
+     * @return the timer shared by every {@link com.istat.freedev.processor.ProcessManager} which doesn't define its own.
+     */
+    public static HashedWheelTimer getDefault() {
+        HashedWheelTimer timer = defaultTimer;
+        if (timer == null) {
+            synchronized (HashedWheelTimer.class) {
+                timer = defaultTimer;
+                if (timer == null) {
+                    defaultTimer = timer = new HashedWheelTimer();
+                }
+            }
+        }
+        return timer;
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("task can't be null");
+        }
+        if (workerState == WORKER_STATE_STOPPED) {
+            throw new IllegalStateException("Timer " + name + " has been stopped");
+        }
+        long deadline = System.nanoTime() + Math.max(unit.toNanos(delay), 0) - startTime;
+        Timeout timeout = new Timeout(this, task, deadline);
+        pendingCount.incrementAndGet();
+        newTimeouts.add(timeout);
+        ensureWorkerStarted();
+        return timeout;
+    }
+
+    /**
+     * @return number of scheduled timeouts, not yet expired nor canceled.
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getTickDuration(TimeUnit unit) {
+        return unit.convert(tickDuration, TimeUnit.NANOSECONDS);
+    }
+
+    public ExecutionEngine getTaskEngine() {
+        return taskEngine;
+    }
+
+    /**
+     * @return maximum number of threads of the pool owned by the timer, unused with a task engine given at construction.
+     */
+    public int getMaxTaskThreadCount() {
+        return maxTaskThreadCount;
+    }
+
+    /**
+     * stop the timer, pending timeouts are dropped. The default timer can't be stopped.
+     */
+    public void stop() {
+        if (this == defaultTimer) {
+            throw new IllegalStateException("The default timer can't be stopped");
+        }
+        WORKER_STATE_UPDATER.set(this, WORKER_STATE_STOPPED);
+        if (taskExecutor != null) {
+            taskExecutor.shutdown();
+        }
+    }
+
+    private void ensureWorkerStarted() {
+        if (WORKER_STATE_UPDATER.compareAndSet(this, WORKER_STATE_IDLE, WORKER_STATE_STARTED)) {
+            Thread thread = new Thread(worker, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private final Runnable worker = new Runnable() {
+        @Override
+        public void run() {
+            tick = (System.nanoTime() - startTime) / tickDuration;
+            while (workerState == WORKER_STATE_STARTED) {
+                long deadline = waitForNextTick();
+                processCanceledTimeouts();
+                transferNewTimeouts();
+                wheel[(int) (tick & mask)].expireTimeouts(deadline);
+                adjustTaskThreads();
+                tick++;
+                if (pendingCount.get() == 0 && !hasWaitingTasks() && WORKER_STATE_UPDATER.compareAndSet(HashedWheelTimer.this, WORKER_STATE_STARTED, WORKER_STATE_IDLE)) {
+                    //a timeout may have been scheduled while we were leaving.
+                    if ((pendingCount.get() == 0 && !hasWaitingTasks()) || !WORKER_STATE_UPDATER.compareAndSet(HashedWheelTimer.this, WORKER_STATE_IDLE, WORKER_STATE_STARTED)) {
+                        return;
+                    }
+                }
+            }
+        }
+    };
+
+    private boolean hasWaitingTasks() {
+        return taskExecutor != null && !taskExecutor.getQueue().isEmpty();
+    }
+
+    private long waitForNextTick() {
+        long deadline = tickDuration * (tick + 1);
+        while (true) {
+            long currentTime = System.nanoTime() - startTime;
+            long sleepTimeMs = (deadline - currentTime + 999999) / 1000000;
+            if (sleepTimeMs <= 0) {
+                return currentTime;
+            }
+            try {
+                Thread.sleep(sleepTimeMs);
+            } catch (InterruptedException e) {
+                if (workerState != WORKER_STATE_STARTED) {
+                    return currentTime;
+                }
+            }
+        }
+    }
+
+    private void transferNewTimeouts() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout timeout = newTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state() == Timeout.STATE_CANCELED) {
+                //canceled before being hashed: it will not be found in canceledTimeouts processing.
+                pendingCount.decrementAndGet();
+                continue;
+            }
+            long calculated = timeout.deadline / tickDuration;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void processCanceledTimeouts() {
+        Timeout timeout;
+        while ((timeout = canceledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+                pendingCount.decrementAndGet();
+            }
+        }
+    }
+
+    public final static class Timeout {
+        final static int STATE_INIT = 0, STATE_CANCELED = 1, STATE_EXPIRED = 2;
+        private final static AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+        final HashedWheelTimer timer;
+        final Runnable task;
+        final long deadline;
+        volatile int state = STATE_INIT;
+        long remainingRounds;
+        Timeout next, prev;
+        Bucket bucket;
+
+        Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        int state() {
+            return state;
+        }
+
+        public Runnable getTask() {
+            return task;
+        }
+
+        /**
+         * @return true if the task will not be run anymore because of this call.
+         */
+        public boolean cancel() {
+            if (!STATE_UPDATER.compareAndSet(this, STATE_INIT, STATE_CANCELED)) {
+                return false;
+            }
+            timer.canceledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCanceled() {
+            return state == STATE_CANCELED;
+        }
+
+        public boolean isExpired() {
+            return state == STATE_EXPIRED;
+        }
+
+        void expire() {
+            if (!STATE_UPDATER.compareAndSet(this, STATE_INIT, STATE_EXPIRED)) {
+                return;
+            }
+            try {
+                timer.taskEngine.execute(task);
+            } catch (RuntimeException e) {
+                //the engine rejected the task: report it without killing the worker, other timeouts still expire.
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    /**
+     * doubly linked list of timeouts, only touched by the worker thread.
+     */
+    final class Bucket {
+        Timeout head, tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expireTimeouts(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    if (timeout.deadline <= deadline) {
+                        remove(timeout);
+                        pendingCount.decrementAndGet();
+                        timeout.expire();
+                    }
+                } else if (timeout.isCanceled()) {
+                    remove(timeout);
+                    pendingCount.decrementAndGet();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.istat.freedev.processor.utils;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ExecutionEngine} running submitted process bodies on a fixed size pool of daemon threads.
+ * Idle threads are released after {@link #KEEP_ALIVE_SECONDS} so an unused engine cost nothing.
+ */
+public class PooledExecutionEngine implements ExecutionEngine {
+    public final static long KEEP_ALIVE_SECONDS = 30;
+    final static AtomicInteger engineCount = new AtomicInteger();
+    final ThreadPoolExecutor executor;
+
+    public PooledExecutionEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public PooledExecutionEngine(int threadCount) {
+        this("PooledExecutionEngine-" + engineCount.incrementAndGet(), threadCount);
+    }
+
+    public PooledExecutionEngine(final String name, int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be greater than 0, given=" + threadCount);
+        }
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    final AtomicInteger threadIndex = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, name + "-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task != null) {
+            executor.execute(task);
+        }
+    }
+
+    public int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getQueuedTaskCount() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveTaskCount() {
+        return executor.getActiveCount();
+    }
+
+    public void shutDown() {
+        executor.shutdown();
+    }
+
+    public boolean isShutDown() {
+        return executor.isShutdown();
+    }
+}
@@ -0,0 +1,296 @@
+package com.istat.freedev.processor.utils;
+
+import com.istat.freedev.processor.Process;
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of worker threads running dispatched runnables by {@link Process#getPriority() priority}, from
+ * {@link Process#PRIORITY_HIGH} to {@link Process#PRIORITY_LOW}. Used as both {@link RunnableDispatcher} and
+ * {@link ExecutionEngine} of a processor, it order process executions and their notifications the same way.
+ * <p>
+ * To avoid starvation, a waiting runnable gain one priority level every {@link #getAgingInterval()} millis:
+ * a low priority runnable waiting for 2 aging intervals go before a high priority one just dispatched.
+ */
+public class PriorityDispatcher implements RunnableDispatcher, ExecutionEngine {
+    public final static long DEFAULT_AGING_INTERVAL = 100;
+    final static int LEVEL_COUNT = Process.PRIORITY_HIGH - Process.PRIORITY_LOW + 1;
+    final static AtomicInteger dispatcherCount = new AtomicInteger();
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition notEmpty = lock.newCondition();
+    final ArrayDeque<Task>[] levels;
+    final ConcurrentHashMap<DelayedTask, Boolean> delayedTasks = new ConcurrentHashMap<>();
+    final Thread[] workers;
+    final long agingInterval;
+    volatile boolean shutDown = false;
+    int size = 0;
+
+    public PriorityDispatcher() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public PriorityDispatcher(int threadCount) {
+        this(threadCount, DEFAULT_AGING_INTERVAL);
+    }
+
+    /**
+     * @param threadCount   number of worker threads
+     * @param agingInterval time in millis a waiting runnable need to gain one priority level
+     */
+    public PriorityDispatcher(int threadCount, long agingInterval) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be greater than 0, given=" + threadCount);
+        }
+        if (agingInterval <= 0) {
+            throw new IllegalArgumentException("agingInterval must be greater than 0, given=" + agingInterval);
+        }
+        this.agingInterval = TimeUnit.MILLISECONDS.toNanos(agingInterval);
+        this.levels = new ArrayDeque[LEVEL_COUNT];
+        for (int i = 0; i < LEVEL_COUNT; i++) {
+            levels[i] = new ArrayDeque<>();
+        }
+        String namePrefix = "PriorityDispatcher-" + dispatcherCount.incrementAndGet() + "-";
+        this.workers = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            workers[i] = new Thread(worker, namePrefix + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public long getAgingInterval() {
+        return TimeUnit.NANOSECONDS.toMillis(agingInterval);
+    }
+
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        execute(task, Process.PRIORITY_NORMAL);
+    }
+
+    @Override
+    public void execute(Runnable task, int priority) {
+        dispatch(task, 0, priority);
+    }
+
+    /**
+     * enqueue the whole batch under a single lock acquisition.
+     */
+    @Override
+    public void execute(Collection<? extends Runnable> tasks, int priority) {
+        if (shutDown) {
+            throw new IllegalStateException("PriorityDispatcher has been shut down");
+        }
+        int level = Math.max(Process.PRIORITY_LOW, Math.min(Process.PRIORITY_HIGH, priority)) - Process.PRIORITY_LOW;
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            for (Runnable runnable : tasks) {
+                if (runnable != null) {
+                    levels[level].add(new Task(runnable, now));
+                    size++;
+                }
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void dispatch(Runnable runnable, long delay) {
+        dispatch(runnable, delay, Process.PRIORITY_NORMAL);
+    }
+
+    @Override
+    public void dispatch(final Runnable runnable, long delay, final int priority) {
+        if (runnable == null) {
+            return;
+        }
+        if (shutDown) {
+            throw new IllegalStateException("PriorityDispatcher has been shut down");
+        }
+        if (delay > 0) {
+            DelayedTask delayedTask = new DelayedTask(runnable, priority);
+            delayedTasks.put(delayedTask, Boolean.TRUE);
+            delayedTask.timeout = HashedWheelTimer.getDefault().schedule(delayedTask, delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        enqueue(runnable, priority);
+    }
+
+    void enqueue(Runnable runnable, int priority) {
+        int level = Math.max(Process.PRIORITY_LOW, Math.min(Process.PRIORITY_HIGH, priority)) - Process.PRIORITY_LOW;
+        Task task = new Task(runnable, System.nanoTime());
+        lock.lock();
+        try {
+            levels[level].add(task);
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void cancel(Runnable runnable) {
+        if (runnable == null) {
+            return;
+        }
+        Iterator<DelayedTask> delayedIterator = delayedTasks.keySet().iterator();
+        while (delayedIterator.hasNext()) {
+            DelayedTask delayedTask = delayedIterator.next();
+            if (delayedTask.runnable == runnable) {
+                delayedTask.cancel();
+            }
+        }
+        lock.lock();
+        try {
+            for (ArrayDeque<Task> level : levels) {
+                Iterator<Task> iterator = level.iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().runnable == runnable) {
+                        iterator.remove();
+                        size--;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void release() {
+        Iterator<DelayedTask> iterator = delayedTasks.keySet().iterator();
+        while (iterator.hasNext()) {
+            iterator.next().cancel();
+        }
+        lock.lock();
+        try {
+            for (ArrayDeque<Task> level : levels) {
+                level.clear();
+            }
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * release pending work and stop worker threads. The dispatcher can't be used anymore after this call.
+     */
+    public void shutDown() {
+        shutDown = true;
+        release();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * @return the task with the highest aged priority, or null if none. must be called with the lock held.
+     */
+    private Task poll() {
+        if (size == 0) {
+            return null;
+        }
+        long now = System.nanoTime();
+        int selectedLevel = -1;
+        long selectedScore = Long.MIN_VALUE;
+        for (int level = LEVEL_COUNT - 1; level >= 0; level--) {
+            Task head = levels[level].peek();
+            if (head != null) {
+                long score = level + (now - head.enqueueTime) / agingInterval;
+                if (score > selectedScore) {
+                    selectedScore = score;
+                    selectedLevel = level;
+                }
+            }
+        }
+        size--;
+        return levels[selectedLevel].poll();
+    }
+
+    private final Runnable worker = new Runnable() {
+        @Override
+        public void run() {
+            while (!shutDown) {
+                Task task;
+                lock.lock();
+                try {
+                    while ((task = poll()) == null) {
+                        notEmpty.await();
+                    }
+                } catch (InterruptedException e) {
+                    continue;
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    task.runnable.run();
+                } catch (Throwable e) {
+                    //report it as the thread would, without killing the worker.
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }
+    };
+
+    final class DelayedTask implements Runnable {
+        final Runnable runnable;
+        final int priority;
+        volatile HashedWheelTimer.Timeout timeout;
+        volatile boolean canceled = false;
+
+        DelayedTask(Runnable runnable, int priority) {
+            this.runnable = runnable;
+            this.priority = priority;
+        }
+
+        void cancel() {
+            canceled = true;
+            delayedTasks.remove(this);
+            HashedWheelTimer.Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            delayedTasks.remove(this);
+            if (!canceled) {
+                enqueue(runnable, priority);
+            }
+        }
+    }
+
+    final static class Task {
+        final Runnable runnable;
+        final long enqueueTime;
+
+        Task(Runnable runnable, long enqueueTime) {
+            this.runnable = runnable;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+}
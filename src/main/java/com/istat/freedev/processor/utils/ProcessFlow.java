@@ -0,0 +1,409 @@
+package com.istat.freedev.processor.utils;
+
+import com.istat.freedev.processor.Process;
+import com.istat.freedev.processor.ProcessManager;
+import com.istat.freedev.processor.interfaces.ProcessListener;
+import com.istat.freedev.processor.interfaces.PublishCallback;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive streams view of process and managers, honouring the demand of their subscribers.
+ * {@code java.util.concurrent.Flow} is not available before Android API 30, so the {@link Publisher},
+ * {@link Subscriber} and {@link Subscription} interfaces below mirror it, method for method: bridging them to
+ * {@code java.util.concurrent.Flow} or {@code org.reactivestreams} is a one line delegation.
+ * <p>
+ * Each subscription buffers at most its capacity of items not yet requested. When it is full, the oldest item is
+ * dropped, so a slow subscriber always receive the latest emissions, see {@link #getDroppedCount(Subscription)}.
+ * The flow is so lossy by default: a subscriber which must receive every item subscribe with an {@link #UNBOUNDED}
+ * capacity, at the cost of buffering everything it didn't request yet.
+ */
+public final class ProcessFlow {
+    public final static int DEFAULT_CAPACITY = 128;
+    /**
+     * capacity of a lossless subscription: no item is ever dropped, the buffer grows as long as the subscriber
+     * doesn't request them.
+     */
+    public final static int UNBOUNDED = Integer.MAX_VALUE;
+
+    public interface Publisher<T> {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+
+    /**
+     * lifecycle event of a process, emitted by {@link #events(ProcessManager)}. Each event mirror a {@link ProcessListener}
+     * callback.
+     */
+    public final static class Event {
+        public final static int TYPE_ENQUEUED = 0, TYPE_STARTED = 1, TYPE_STATE_CHANGED = 2, TYPE_FINISHED = 3;
+        public final Process process;
+        public final String id;
+        public final int type;
+        public final int state;
+
+        Event(int type, Process process, String id, int state) {
+            this.type = type;
+            this.process = process;
+            this.id = id;
+            this.state = state;
+        }
+
+        @Override
+        public String toString() {
+            return "Event{type=" + type + ", id=" + id + ", state=" + state + "}";
+        }
+    }
+
+    private ProcessFlow() {
+    }
+
+    /**
+     * @return a publisher emitting the result of the process once it succeed, then completing.
+     * It fail with the error or the exception of the process, and with a {@link CancellationException} if the process
+     * is aborted or dropped.
+     */
+    public static <R> Publisher<R> result(final Process<R, ?> process) {
+        return new Publisher<R>() {
+            @Override
+            public void subscribe(Subscriber<? super R> subscriber) {
+                BufferedSubscription<R> subscription = new ProcessSubscription<R>(subscriber, DEFAULT_CAPACITY, process, true);
+                subscriber.onSubscribe(subscription);
+                subscription.start();
+            }
+        };
+    }
+
+    /**
+     * @see #emissions(Process, int)
+     */
+    public static <T> Publisher<T> emissions(Process<?, ?> process) {
+        return emissions(process, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity max number of emissions buffered for a subscriber which didn't request them yet, the oldest
+     *                 one being dropped beyond. {@link #UNBOUNDED} to drop none.
+     * @return a publisher emitting the values published by the process, see {@link Process#publish(Object)}, completing
+     * when the process succeed. It fail as {@link #result(Process)}.
+     */
+    public static <T> Publisher<T> emissions(final Process<?, ?> process, final int capacity) {
+        checkCapacity(capacity);
+        return new Publisher<T>() {
+            @Override
+            public void subscribe(Subscriber<? super T> subscriber) {
+                BufferedSubscription<T> subscription = new ProcessSubscription<T>(subscriber, capacity, process, false);
+                subscriber.onSubscribe(subscription);
+                subscription.start();
+            }
+        };
+    }
+
+    /**
+     * @see #events(ProcessManager, int, Class, int)
+     */
+    public static Publisher<Event> events(ProcessManager manager) {
+        return events(manager, ProcessListener.ANY_STATE, null, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param stateMask    see {@link ProcessManager#registerProcessListener(ProcessListener, int, Class)}
+     * @param processClass see {@link ProcessManager#registerProcessListener(ProcessListener, int, Class)}
+     * @param capacity     max number of events buffered for a subscriber which didn't request them yet, the oldest
+     *                     one being dropped beyond. {@link #UNBOUNDED} to drop none.
+     * @return a publisher emitting the lifecycle events of the process run by the manager, from the subscription
+     * until it is canceled. It never complete.
+     */
+    public static Publisher<Event> events(final ProcessManager manager, final int stateMask, final Class<? extends Process> processClass, final int capacity) {
+        checkCapacity(capacity);
+        return new Publisher<Event>() {
+            @Override
+            public void subscribe(Subscriber<? super Event> subscriber) {
+                BufferedSubscription<Event> subscription = new ManagerSubscription(subscriber, capacity, manager, stateMask, processClass);
+                subscriber.onSubscribe(subscription);
+                subscription.start();
+            }
+        };
+    }
+
+    /**
+     * @return number of items dropped because the subscriber didn't request them fast enough, 0 for subscriptions
+     * which are not from this class.
+     */
+    public static long getDroppedCount(Subscription subscription) {
+        return subscription instanceof BufferedSubscription ? ((BufferedSubscription) subscription).droppedCount.get() : 0;
+    }
+
+    private static void checkCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0, given=" + capacity);
+        }
+    }
+
+    /**
+     * bounded buffer between a source pushing items and a subscriber pulling them.
+     * Signals are serialized by a drain loop: only one thread at a time signal the subscriber.
+     */
+    abstract static class BufferedSubscription<T> implements Subscription {
+        final Subscriber<? super T> subscriber;
+        final int capacity;
+        final ArrayDeque<T> queue = new ArrayDeque<>();
+        final AtomicInteger wip = new AtomicInteger();
+        final AtomicLong droppedCount = new AtomicLong();
+        long requested = 0;
+        boolean done = false;
+        Throwable error;
+        volatile boolean canceled = false;
+        boolean terminated = false;
+
+        BufferedSubscription(Subscriber<? super T> subscriber, int capacity) {
+            if (subscriber == null) {
+                throw new NullPointerException("subscriber can't be null");
+            }
+            this.subscriber = subscriber;
+            this.capacity = capacity;
+        }
+
+        /**
+         * connect the subscription to its source, called once the subscriber received it.
+         */
+        abstract void start();
+
+        /**
+         * disconnect the subscription from its source.
+         */
+        abstract void stop();
+
+        void emit(T item) {
+            synchronized (this) {
+                if (done || canceled) {
+                    return;
+                }
+                if (queue.size() >= capacity) {
+                    queue.poll();
+                    droppedCount.incrementAndGet();
+                }
+                queue.add(item);
+            }
+            drain();
+        }
+
+        void complete() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            drain();
+        }
+
+        void fail(Throwable throwable) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                error = throwable;
+                queue.clear();
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("request must be greater than 0, given=" + n));
+                return;
+            }
+            synchronized (this) {
+                requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!canceled) {
+                canceled = true;
+                stop();
+                synchronized (this) {
+                    queue.clear();
+                }
+            }
+        }
+
+        final void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                while (true) {
+                    T item;
+                    boolean complete = false;
+                    Throwable error = null;
+                    synchronized (this) {
+                        if (canceled || terminated) {
+                            queue.clear();
+                            break;
+                        }
+                        if (queue.isEmpty() || requested == 0) {
+                            if (done && queue.isEmpty()) {
+                                terminated = true;
+                                complete = this.error == null;
+                                error = this.error;
+                            } else {
+                                break;
+                            }
+                        }
+                        item = complete || error != null ? null : queue.poll();
+                        if (item != null && requested != Long.MAX_VALUE) {
+                            requested--;
+                        }
+                    }
+                    if (complete) {
+                        stop();
+                        subscriber.onComplete();
+                        break;
+                    }
+                    if (error != null) {
+                        stop();
+                        subscriber.onError(error);
+                        break;
+                    }
+                    subscriber.onNext(item);
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    final static class ProcessSubscription<T> extends BufferedSubscription<T> implements Process.PromiseCallback<Process>, PublishCallback<T> {
+        final Process process;
+        final boolean emitResult;
+
+        ProcessSubscription(Subscriber<? super T> subscriber, int capacity, Process process, boolean emitResult) {
+            super(subscriber, capacity);
+            this.process = process;
+            this.emitResult = emitResult;
+        }
+
+        @Override
+        void start() {
+            if (canceled) {
+                return;
+            }
+            if (!emitResult) {
+                process.addPublishCallback(this);
+            }
+            //finish promises run after the published values have been delivered, whatever the final state.
+            process.promise(this, Process.STATE_FLAG_FINISHED);
+        }
+
+        @Override
+        void stop() {
+            process.removePublishCallback(this);
+            process.compromise(this);
+        }
+
+        @Override
+        public void onPublished(T value) {
+            emit(value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onPromise(Process process) {
+            switch (process.getState()) {
+                case Process.STATE_SUCCESS:
+                    if (emitResult && process.getResult() != null) {
+                        emit((T) process.getResult());
+                    }
+                    complete();
+                    break;
+                case Process.STATE_ERROR:
+                case Process.STATE_FAILED:
+                    Throwable cause = process.getException();
+                    fail(cause != null ? cause : new IllegalStateException("Process with PID=" + process.getId() + " failed"));
+                    break;
+                default:
+                    fail(new CancellationException("Process with PID=" + process.getId() + " has been canceled"));
+                    break;
+            }
+        }
+    }
+
+    final static class ManagerSubscription extends BufferedSubscription<Event> implements ProcessListener {
+        final ProcessManager manager;
+        final int stateMask;
+        final Class<? extends Process> processClass;
+
+        ManagerSubscription(Subscriber<? super Event> subscriber, int capacity, ProcessManager manager, int stateMask, Class<? extends Process> processClass) {
+            super(subscriber, capacity);
+            this.manager = manager;
+            this.stateMask = stateMask;
+            this.processClass = processClass;
+        }
+
+        @Override
+        void start() {
+            if (!canceled) {
+                manager.registerProcessListener(this, stateMask, processClass);
+            }
+        }
+
+        @Override
+        void stop() {
+            if (!manager.isProcessListenerRegistered(this)) {
+                return;
+            }
+            try {
+                manager.unRegisterProcessListener(this);
+            } catch (Exception e) {
+                //unregistered meanwhile, by the release of the manager: the only failure of unRegisterProcessListener.
+            }
+        }
+
+        @Override
+        public void onProcessEnqueued(Process process, String id) {
+            emit(new Event(Event.TYPE_ENQUEUED, process, id, process.getState()));
+        }
+
+        @Override
+        public void onProcessStarted(Process process, String id) {
+            emit(new Event(Event.TYPE_STARTED, process, id, process.getState()));
+        }
+
+        @Override
+        public void onProcessStateChanged(Process process, String id, int state) {
+            emit(new Event(Event.TYPE_STATE_CHANGED, process, id, state));
+        }
+
+        @Override
+        public void onProcessFinished(Process process, String id) {
+            emit(new Event(Event.TYPE_FINISHED, process, id, process.getState()));
+        }
+    }
+}
@@ -3,9 +3,13 @@ package com.istat.freedev.processor.utils;
 import com.istat.freedev.processor.ProcessManager;
 import com.istat.freedev.processor.Processor;
 import com.istat.freedev.processor.Process;
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
 import com.istat.freedev.processor.interfaces.ProcessListener;
 import com.istat.freedev.processor.interfaces.RunnableDispatcher;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Created by istat on 07/02/17.
  */
@@ -22,7 +26,11 @@ public class ProcessUnit {
     }
 
     public ProcessUnit(String nameSpace, RunnableDispatcher dispatcher) {
-        processor = Processor.boot(nameSpace, dispatcher);
+        this(nameSpace, dispatcher, null);
+    }
+
+    public ProcessUnit(String nameSpace, RunnableDispatcher dispatcher, ExecutionEngine executionEngine) {
+        processor = Processor.boot(nameSpace, dispatcher, executionEngine);
     }
 
     public Processor getProcessor() {
@@ -46,6 +54,11 @@ public class ProcessUnit {
         return this;
     }
 
+    public ProcessUnit registerProcessListener(ProcessListener listener, int stateMask, Class<? extends Process> processClass) {
+        getProcessManager().registerProcessListener(listener, stateMask, processClass);
+        return this;
+    }
+
     public boolean unRegisterProcessListener(ProcessListener listener) {
         try {
             getProcessManager().unRegisterProcessListener(listener);
@@ -66,4 +79,8 @@ public class ProcessUnit {
     public <R, E extends Throwable> Process<R, E> execute(String PID, Process<R, E> process, Object... vars) throws ProcessManager.ProcessException {
         return getProcessManager().execute(PID, process, vars);
     }
+
+    public <T extends Process> List<T> executeAll(Collection<T> processes, Object... vars) {
+        return getProcessManager().executeAll(processes, vars);
+    }
 }
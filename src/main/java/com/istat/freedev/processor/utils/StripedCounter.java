@@ -0,0 +1,65 @@
+package com.istat.freedev.processor.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter made for frequent updates from many threads and rare reads, as {@code java.util.concurrent.atomic.LongAdder}
+ * (which is not available before Android API 24).
+ * Updates are spread over padded cells chosen from the updating thread, so threads rarely contend on the same cell;
+ * {@link #sum()} aggregate the cells when the value is read, it is so not an atomic snapshot under concurrent updates.
+ */
+public final class StripedCounter {
+    //one cell per 64 bytes cache line, to avoid false sharing between cells.
+    private final static int CELL_STRIDE = 8;
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param concurrencyLevel expected number of updating threads, rounded up to a power of two
+     */
+    public StripedCounter(int concurrencyLevel) {
+        int cellCount = 1;
+        while (cellCount < concurrencyLevel && cellCount < (1 << 16)) {
+            cellCount <<= 1;
+        }
+        this.mask = cellCount - 1;
+        this.cells = new AtomicLongArray(cellCount * CELL_STRIDE);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void decrement() {
+        add(-1);
+    }
+
+    public void add(long delta) {
+        cells.getAndAdd(cellIndex(), delta);
+    }
+
+    /**
+     * @return the sum of every cell.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += CELL_STRIDE) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    public int intValue() {
+        long sum = sum();
+        return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+    }
+
+    private int cellIndex() {
+        int hash = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & mask) * CELL_STRIDE;
+    }
+}
@@ -0,0 +1,63 @@
+package com.istat.freedev.processor.utils;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ExecutionEngine} giving each submitted process its own thread, made for process which block inside
+ * {@link com.istat.freedev.processor.Process#onExecute}.
+ * When the running VM support virtual threads, each process run on a virtual thread, otherwise on a small stack daemon thread.
+ * <p>
+ * Notifications and promises are delivered through {@link com.istat.freedev.processor.Process#post(Runnable)}. Posting
+ * hold a monitor for the bookkeeping of the process lane and of delayed posts, but never while a callback runs nor
+ * while it waits: a callback, blocking or not, runs outside of any monitor of the library. A blocking callback so
+ * doesn't pin the carrier thread of a virtual thread, unless it blocks inside a monitor of its own.
+ */
+public class ThreadPerProcessExecutionEngine implements ExecutionEngine {
+    public final static long DEFAULT_STACK_SIZE = 128 * 1024;
+    final static AtomicInteger threadCount = new AtomicInteger();
+    final Executor virtualThreadExecutor;
+    final long stackSize;
+
+    public ThreadPerProcessExecutionEngine() {
+        this(DEFAULT_STACK_SIZE);
+    }
+
+    /**
+     * @param stackSize stack size of platform threads, used only when virtual threads are not available.
+     */
+    public ThreadPerProcessExecutionEngine(long stackSize) {
+        this.stackSize = stackSize;
+        this.virtualThreadExecutor = findVirtualThreadExecutor();
+    }
+
+    public boolean isUsingVirtualThread() {
+        return virtualThreadExecutor != null;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            return;
+        }
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.execute(task);
+            return;
+        }
+        Thread thread = new Thread(null, task, "ThreadPerProcess-" + threadCount.incrementAndGet(), stackSize);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static Executor findVirtualThreadExecutor() {
+        try {
+            Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return (Executor) executor;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+}
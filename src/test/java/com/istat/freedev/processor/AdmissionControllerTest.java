@@ -0,0 +1,193 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControllerTest {
+
+    /**
+     * keep submitted process bodies until {@link #runPending()}, so admitted process stay running.
+     */
+    static class DeferringEngine implements ExecutionEngine {
+        final List<Runnable> pending = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            pending.add(task);
+        }
+
+        synchronized int getPendingCount() {
+            return pending.size();
+        }
+
+        void runPending() {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    task = pending.remove(0);
+                }
+                task.run();
+            }
+        }
+    }
+
+    static class ThreadRecordingProcess extends TestProcess {
+        volatile Thread executionThread;
+
+        @Override
+        protected void onExecute(ExecutionVariables executionVariables) {
+            executionThread = Thread.currentThread();
+        }
+    }
+
+    final DeferringEngine engine = new DeferringEngine();
+    final ProcessManager manager = new ProcessManager("AdmissionControllerTest", RunnableDispatcher.SIMPLE_RUNNER, engine);
+
+    @Test
+    public void reject_failsTheOverflowingProcess() throws Exception {
+        AdmissionController controller = new AdmissionController(1, 0, AdmissionController.OverflowPolicy.REJECT);
+        manager.setAdmissionController(controller);
+        TestProcess admitted = new TestProcess(), rejected = new TestProcess();
+        manager.execute(admitted);
+        try {
+            manager.execute(rejected);
+            fail("the process has not been rejected");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof ProcessManager.ProcessException);
+        }
+        assertEquals(Process.STATE_FAILED, rejected.getState());
+        assertEquals(1, controller.getRejectedCount());
+        assertEquals(1, controller.getActiveCount());
+        assertEquals(1, engine.getPendingCount());
+    }
+
+    @Test
+    public void callerRuns_runsTheOverflowingProcessOnTheSubmitter() throws Exception {
+        AdmissionController controller = new AdmissionController(1, 0, AdmissionController.OverflowPolicy.CALLER_RUNS);
+        manager.setAdmissionController(controller);
+        ThreadRecordingProcess admitted = new ThreadRecordingProcess(), overflowing = new ThreadRecordingProcess();
+        manager.execute(admitted);
+        manager.execute(overflowing);
+        assertNull(admitted.executionThread);
+        assertSame(Thread.currentThread(), overflowing.executionThread);
+        assertEquals(2, controller.getActiveCount());
+        overflowing.succeed("result");
+        assertEquals(1, controller.getActiveCount());
+    }
+
+    @Test
+    public void dropOldest_dropsTheOldestPendingProcess() throws Exception {
+        AdmissionController controller = new AdmissionController(1, 1, AdmissionController.OverflowPolicy.DROP_OLDEST);
+        manager.setAdmissionController(controller);
+        TestProcess admitted = new TestProcess(), oldest = new TestProcess(), newest = new TestProcess();
+        manager.execute(admitted);
+        manager.execute(oldest);
+        manager.execute(newest);
+        assertEquals(Process.STATE_DROPPED, oldest.getState());
+        assertEquals(1, controller.getDroppedCount());
+        assertEquals(1, controller.getPendingCount());
+        engine.runPending();
+        admitted.succeed("result");
+        //the slot released by the admitted process goes to the newest one, the dropped one doesn't hold any.
+        assertEquals(1, controller.getActiveCount());
+        assertEquals(0, controller.getPendingCount());
+        engine.runPending();
+        newest.succeed("result");
+        assertEquals(0, controller.getActiveCount());
+    }
+
+    @Test
+    public void block_waitsForRoomThenRejectsOnTimeout() throws Exception {
+        final AdmissionController controller = new AdmissionController(1, 0, AdmissionController.OverflowPolicy.BLOCK);
+        manager.setAdmissionController(controller);
+        TestProcess admitted = new TestProcess();
+        final TestProcess blocked = new TestProcess();
+        manager.execute(admitted);
+        final CountDownLatch submitted = new CountDownLatch(1);
+        final AtomicReference<Throwable> submitError = new AtomicReference<>();
+        Thread submitter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    manager.execute(blocked);
+                } catch (Throwable e) {
+                    submitError.set(e);
+                }
+                submitted.countDown();
+            }
+        };
+        submitter.start();
+        assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+        admitted.succeed("result");
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        assertNull(submitError.get());
+        assertEquals(1, controller.getActiveCount());
+
+        controller.setBlockTimeout(50);
+        try {
+            manager.execute(new TestProcess());
+            fail("the process has not been rejected once the block timeout elapsed");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof ProcessManager.ProcessException);
+        }
+        assertEquals(1, controller.getRejectedCount());
+    }
+
+    @Test
+    public void setAdmissionController_handsPendingProcessOverToTheNewOne() throws Exception {
+        AdmissionController previous = new AdmissionController(1, 10, AdmissionController.OverflowPolicy.REJECT);
+        manager.setAdmissionController(previous);
+        TestProcess admitted = new TestProcess(), pending = new TestProcess();
+        manager.execute(admitted);
+        manager.execute(pending);
+        assertEquals(1, previous.getPendingCount());
+
+        AdmissionController next = new AdmissionController(1, 10, AdmissionController.OverflowPolicy.REJECT);
+        manager.setAdmissionController(next);
+        assertEquals(0, previous.getPendingCount());
+        assertEquals(1, next.getActiveCount());
+        TestProcess canceled = new TestProcess();
+        manager.execute(canceled);
+        assertEquals(1, next.getPendingCount());
+        //a pending process finishing leave the queue of the controller it is bound to.
+        canceled.cancel();
+        assertEquals(0, next.getPendingCount());
+
+        engine.runPending();
+        admitted.succeed("result");
+        pending.succeed("result");
+        assertEquals(0, previous.getActiveCount());
+        assertEquals(0, next.getActiveCount());
+    }
+
+    @Test
+    public void setAdmissionController_runsPendingProcessWithoutController() throws Exception {
+        AdmissionController previous = new AdmissionController(1, 10, AdmissionController.OverflowPolicy.REJECT);
+        manager.setAdmissionController(previous);
+        TestProcess admitted = new TestProcess(), pending = new TestProcess();
+        manager.execute(admitted);
+        manager.execute(pending);
+        assertEquals(1, engine.getPendingCount());
+        manager.setAdmissionController(null);
+        assertEquals(0, previous.getPendingCount());
+        assertEquals(2, engine.getPendingCount());
+        engine.runPending();
+        admitted.succeed("result");
+        pending.succeed("result");
+        assertEquals(0, previous.getActiveCount());
+        assertEquals(Process.STATE_SUCCESS, pending.getState());
+    }
+}
@@ -0,0 +1,137 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+import com.istat.freedev.processor.utils.HashedWheelTimer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DelayedPostTest {
+    final HashedWheelTimer timer = new HashedWheelTimer();
+    final ProcessManager manager = new ProcessManager("DelayedPostTest", RunnableDispatcher.SIMPLE_RUNNER);
+
+    {
+        manager.setTimer(timer);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void postDelayed_runsOnceThenForgetsThePost() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        };
+        assertTrue(manager.postDelayed(runnable, 20));
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(manager.delayedPosts.isEmpty());
+    }
+
+    @Test
+    public void unPost_cancelsEveryPendingPost() throws Exception {
+        final AtomicInteger runCount = new AtomicInteger();
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                runCount.incrementAndGet();
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            manager.postDelayed(runnable, 1000 + i * 10);
+        }
+        manager.unPost(runnable);
+        Thread.sleep(200);
+        assertEquals(0, runCount.get());
+        assertTrue(manager.delayedPosts.isEmpty());
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    public void postDelayed_repostedRunnableDoesntLeak() throws Exception {
+        final int count = 200;
+        final CountDownLatch ran = new CountDownLatch(count);
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        };
+        //each post is done while the previous ones are still pending.
+        for (int i = 0; i < count; i++) {
+            manager.postDelayed(runnable, 30);
+            if (i % 20 == 0) {
+                Thread.sleep(10);
+            }
+        }
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(manager.delayedPosts.isEmpty());
+    }
+
+    @Test
+    public void unPost_racingPostDelayed_leavesNothingPending() throws Exception {
+        final int count = 2000;
+        final Runnable[] runnables = new Runnable[count];
+        final AtomicInteger runCount = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            runnables[i] = new Runnable() {
+                @Override
+                public void run() {
+                    runCount.incrementAndGet();
+                }
+            };
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread poster = new Thread() {
+            @Override
+            public void run() {
+                awaitQuietly(start);
+                //long enough not to expire before the final unPost, however slow the posting loop.
+                for (Runnable runnable : runnables) {
+                    manager.postDelayed(runnable, 5000);
+                }
+            }
+        };
+        Thread unPoster = new Thread() {
+            @Override
+            public void run() {
+                awaitQuietly(start);
+                for (Runnable runnable : runnables) {
+                    manager.unPost(runnable);
+                }
+            }
+        };
+        poster.start();
+        unPoster.start();
+        start.countDown();
+        poster.join();
+        unPoster.join();
+        //whatever the interleaving, a post done before the unPost call is canceled.
+        for (Runnable runnable : runnables) {
+            manager.unPost(runnable);
+        }
+        Thread.sleep(200);
+        assertEquals(0, runCount.get());
+        assertTrue(manager.delayedPosts.isEmpty());
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
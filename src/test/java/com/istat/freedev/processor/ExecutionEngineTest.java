@@ -0,0 +1,63 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+import com.istat.freedev.processor.utils.PooledExecutionEngine;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ExecutionEngineTest {
+
+    static class LatchedProcess extends AdmissionControllerTest.ThreadRecordingProcess {
+        final CountDownLatch executed = new CountDownLatch(1);
+
+        @Override
+        protected void onExecute(ExecutionVariables executionVariables) {
+            super.onExecute(executionVariables);
+            executed.countDown();
+        }
+    }
+
+    final AdmissionControllerTest.DeferringEngine engine = new AdmissionControllerTest.DeferringEngine();
+    final ProcessManager manager = new ProcessManager("ExecutionEngineTest", RunnableDispatcher.SIMPLE_RUNNER, engine);
+
+    @Test
+    public void execute_returnsBeforeTheEngineRunsTheBody() throws Exception {
+        LatchedProcess process = new LatchedProcess();
+        manager.execute(process);
+        assertTrue(process.isRunning());
+        assertEquals(Process.STATE_PENDING, process.getState());
+        assertNull(process.executionThread);
+        engine.runPending();
+        assertSame(Thread.currentThread(), process.executionThread);
+        assertEquals(Process.STATE_PROCESSING, process.getState());
+    }
+
+    @Test
+    public void blockingFlag_runsTheBodyOnItsOwnThread() throws Exception {
+        LatchedProcess process = new LatchedProcess();
+        process.setFlags(Process.FLAG_BLOCKING);
+        manager.execute(process);
+        assertTrue(process.executed.await(5, TimeUnit.SECONDS));
+        //the manager engine is bypassed.
+        assertEquals(0, engine.getPendingCount());
+        assertNotSame(Thread.currentThread(), process.executionThread);
+        process.succeed("result");
+    }
+
+    @Test
+    public void pooledEngine_runsTheBodyOffTheSubmitter() throws Exception {
+        ProcessManager manager = new ProcessManager("ExecutionEngineTest", RunnableDispatcher.SIMPLE_RUNNER,
+                new PooledExecutionEngine("ExecutionEngineTest", 1));
+        LatchedProcess process = new LatchedProcess();
+        manager.execute(process);
+        assertTrue(process.executed.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), process.executionThread);
+        process.succeed("result");
+        assertEquals(Process.STATE_SUCCESS, process.getState());
+    }
+}
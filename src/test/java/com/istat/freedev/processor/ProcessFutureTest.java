@@ -0,0 +1,84 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class ProcessFutureTest {
+    final ProcessManager manager = new ProcessManager("ProcessFutureTest", RunnableDispatcher.SIMPLE_RUNNER, ExecutionEngine.CALLER_RUNS);
+    final TestProcess process = new TestProcess();
+
+    @Test
+    public void get_returnsTheResultOnceTheProcessSucceed() throws Exception {
+        manager.execute(process);
+        Future<String> future = process.asFuture();
+        assertFalse(future.isDone());
+        succeedLater("result", 50);
+        assertEquals("result", future.get(5, TimeUnit.SECONDS));
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void get_throwsTheErrorOfAFailedProcess() throws Exception {
+        manager.execute(process);
+        Exception error = new Exception("error");
+        process.error(error);
+        try {
+            process.asFuture().get();
+            fail("the error has not been reported");
+        } catch (ExecutionException e) {
+            assertSame(error, e.getCause());
+        }
+    }
+
+    @Test(expected = CancellationException.class)
+    public void get_throwsOnceCanceled() throws Exception {
+        manager.execute(process);
+        Future<String> future = process.asFuture();
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        future.get();
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void get_timesOutWhileRunning() throws Exception {
+        manager.execute(process);
+        process.asFuture().get(50, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void await_returnsOnTermination() throws Exception {
+        manager.execute(process);
+        assertFalse(process.await(50));
+        succeedLater("result", 50);
+        process.await();
+        assertFalse(process.isRunning());
+        assertEquals(Process.STATE_SUCCESS, process.getState());
+        //not running anymore, it doesn't wait.
+        assertTrue(process.await(0));
+    }
+
+    private void succeedLater(final String result, final long delay) {
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                process.succeed(result);
+            }
+        }.start();
+    }
+}
@@ -0,0 +1,82 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ProcessGroupTest {
+    final ProcessManager manager = new ProcessManager("ProcessGroupTest", RunnableDispatcher.SIMPLE_RUNNER, ExecutionEngine.CALLER_RUNS);
+    final ProcessGroup group = manager.getProcessGroup("group");
+
+    @Test
+    public void getProcessGroup_returnsTheSameGroupUntilRemoved() {
+        assertSame(group, manager.getProcessGroup("group"));
+        assertSame(group, manager.removeProcessGroup("group"));
+        assertNotSame(group, manager.getProcessGroup("group"));
+    }
+
+    @Test
+    public void cancel_cancelsOnlyTheProcessOfTheGroup() {
+        TestProcess first = new TestProcess(), second = new TestProcess(), outside = new TestProcess();
+        group.execute(first);
+        group.executeAll(Arrays.asList(second));
+        manager.execute(outside);
+        assertEquals(2, group.getRunningCount());
+        assertEquals(2, manager.cancelGroup("group"));
+        assertEquals(Process.STATE_ABORTED, first.getState());
+        assertEquals(Process.STATE_ABORTED, second.getState());
+        assertTrue(outside.isRunning());
+        assertFalse(group.hasRunningProcess());
+        assertEquals(2, group.getAbortedCount());
+    }
+
+    @Test
+    public void statistics_countEachFinalState() {
+        TestProcess succeeding = new TestProcess(), failing = new TestProcess(), erring = new TestProcess();
+        group.execute(succeeding);
+        group.execute(failing);
+        group.execute(erring);
+        succeeding.succeed("result");
+        failing.fail(new Exception("fail"));
+        erring.error(new Exception("error"));
+        assertEquals(3, group.getSubmittedCount());
+        assertEquals(3, group.getFinishedCount());
+        assertEquals(1, group.getSucceededCount());
+        assertEquals(2, group.getFailedCount());
+        assertTrue(group.getMaxLatency() >= group.getAverageLatency());
+    }
+
+    @Test
+    public void await_returnsOnceTheGroupIsEmpty() throws Exception {
+        final TestProcess process = new TestProcess();
+        group.execute(process);
+        assertFalse(group.await(50));
+        final CountDownLatch started = new CountDownLatch(1);
+        Thread finisher = new Thread() {
+            @Override
+            public void run() {
+                started.countDown();
+                process.succeed("result");
+            }
+        };
+        finisher.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(group.await(TimeUnit.SECONDS.toMillis(5)));
+        finisher.join();
+        assertEquals(0, group.getRunningCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void execute_rejectsRunningProcess() {
+        TestProcess process = new TestProcess();
+        manager.execute(process);
+        group.execute(process);
+    }
+}
@@ -0,0 +1,153 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.utils.ExecutorDispatcher;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ProcessLifecycleTest {
+    final ExecutorDispatcher dispatcher = new ExecutorDispatcher(4);
+    final ProcessManager manager = new ProcessManager("ProcessLifecycleTest", dispatcher, ExecutionEngine.CALLER_RUNS);
+    final AtomicInteger terminalCount = new AtomicInteger(),
+            finishedCount = new AtomicInteger(),
+            promiseCount = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        dispatcher.release();
+    }
+
+    @Test
+    public void racingTerminations_notifyExactlyOnce() throws Exception {
+        final int count = 2000;
+        final CyclicBarrier barrier = new CyclicBarrier(3);
+        for (int i = 0; i < count; i++) {
+            final TestProcess process = new TestProcess();
+            final CountDownLatch finished = new CountDownLatch(1);
+            process.addCallback(new ProcessPoolTest.Callback() {
+                @Override
+                public void onSuccess(String result) {
+                    terminalCount.incrementAndGet();
+                }
+
+                @Override
+                public void onError(Exception error) {
+                    terminalCount.incrementAndGet();
+                }
+
+                @Override
+                public void onFail(Throwable e) {
+                    terminalCount.incrementAndGet();
+                }
+
+                @Override
+                public void onAborted() {
+                    terminalCount.incrementAndGet();
+                }
+
+                @Override
+                public void onFinished(int finishState) {
+                    finishedCount.incrementAndGet();
+                }
+            });
+            process.promise(new Runnable() {
+                @Override
+                public void run() {
+                    promiseCount.incrementAndGet();
+                    finished.countDown();
+                }
+            }, Process.STATE_FLAG_FINISHED);
+            manager.execute(process);
+            assertTrue(process.isRunning());
+            Thread succeeding = new Thread() {
+                @Override
+                public void run() {
+                    awaitQuietly(barrier);
+                    process.succeed("result");
+                }
+            };
+            Thread failing = new Thread() {
+                @Override
+                public void run() {
+                    awaitQuietly(barrier);
+                    process.error(new Exception("error"));
+                }
+            };
+            succeeding.start();
+            failing.start();
+            awaitQuietly(barrier);
+            process.cancel();
+            succeeding.join();
+            failing.join();
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            assertFalse(process.isRunning());
+        }
+        //late duplicates, if any, are delivered by now.
+        Thread.sleep(200);
+        assertEquals(count, terminalCount.get());
+        assertEquals(count, finishedCount.get());
+        assertEquals(count, promiseCount.get());
+    }
+
+    @Test
+    public void terminate_afterTerminationIsIgnored() throws Exception {
+        TestProcess process = new TestProcess();
+        final CountDownLatch finished = new CountDownLatch(1);
+        process.promise(new Runnable() {
+            @Override
+            public void run() {
+                promiseCount.incrementAndGet();
+                finished.countDown();
+            }
+        }, Process.STATE_FLAG_FINISHED);
+        manager.execute(process);
+        process.succeed("result");
+        process.cancel();
+        process.error(new Exception("error"));
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(Process.STATE_SUCCESS, process.getState());
+        assertEquals("result", process.getResult());
+        assertNull(process.getError());
+        assertEquals(1, promiseCount.get());
+    }
+
+    @Test
+    public void chain_executesTheChainedProcessOnSuccess() throws Exception {
+        TestProcess process = new TestProcess();
+        final ExecutionEngineTest.LatchedProcess chained = new ExecutionEngineTest.LatchedProcess();
+        final CountDownLatch finished = new CountDownLatch(1);
+        chained.promise(new Runnable() {
+            @Override
+            public void run() {
+                finished.countDown();
+            }
+        }, Process.STATE_FLAG_FINISHED);
+        process.chain(chained);
+        manager.execute(process);
+        process.succeed("result");
+        assertTrue(chained.executed.await(5, TimeUnit.SECONDS));
+        assertSame(manager, chained.getManager());
+        assertEquals("result", chained.getExecutionVariables().getVariable(0));
+        chained.succeed("chained");
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(Process.STATE_SUCCESS, chained.getState());
+        assertEquals("chained", chained.getResult());
+    }
+
+    static void awaitQuietly(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.ProcessListener;
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProcessListenerTest {
+
+    static class OtherProcess extends TestProcess {
+    }
+
+    /**
+     * record each event as "event:id".
+     */
+    static class RecordingListener implements ProcessListener {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void onProcessEnqueued(Process process, String id) {
+            events.add("enqueued:" + id);
+        }
+
+        @Override
+        public void onProcessStarted(Process process, String id) {
+            events.add("started:" + id);
+        }
+
+        @Override
+        public void onProcessFinished(Process process, String id) {
+            events.add("finished:" + id);
+        }
+    }
+
+    final ProcessManager manager = new ProcessManager("ProcessListenerTest", RunnableDispatcher.SIMPLE_RUNNER, ExecutionEngine.CALLER_RUNS);
+    final RecordingListener listener = new RecordingListener();
+
+    @Test
+    public void anyState_receivesEveryEvent() throws Exception {
+        manager.registerProcessListener(listener);
+        run("p1", new TestProcess());
+        assertEquals(Arrays.asList("enqueued:p1", "started:p1", "finished:p1"), listener.events);
+    }
+
+    @Test
+    public void stateMask_filtersEventsByProcessState() throws Exception {
+        manager.registerProcessListener(listener, Process.STATE_FLAG_FINISHED, null);
+        run("p1", new TestProcess());
+        TestProcess aborted = new TestProcess();
+        aborted.setId("p2");
+        manager.execute(aborted);
+        aborted.cancel();
+        assertEquals(Arrays.asList("finished:p1", "finished:p2"), listener.events);
+    }
+
+    @Test
+    public void processClass_filtersEventsByProcessType() throws Exception {
+        manager.registerProcessListener(listener, ProcessListener.ANY_STATE, OtherProcess.class);
+        run("p1", new TestProcess());
+        run("p2", new OtherProcess());
+        assertEquals(Arrays.asList("enqueued:p2", "started:p2", "finished:p2"), listener.events);
+    }
+
+    @Test
+    public void registerAgain_replacesTheFilter() throws Exception {
+        manager.registerProcessListener(listener, ProcessListener.ANY_STATE, OtherProcess.class);
+        manager.registerProcessListener(listener, Process.STATE_FLAG_FINISHED, null);
+        run("p1", new TestProcess());
+        //notified once per event, with the last filter.
+        assertEquals(Collections.singletonList("finished:p1"), listener.events);
+        assertTrue(manager.isProcessListenerRegistered(listener));
+    }
+
+    @Test
+    public void unRegister_stopsEvents() throws Exception {
+        manager.registerProcessListener(listener);
+        manager.unRegisterProcessListener(listener);
+        assertFalse(manager.isProcessListenerRegistered(listener));
+        run("p1", new TestProcess());
+        assertTrue(listener.events.isEmpty());
+    }
+
+    private void run(String id, TestProcess process) {
+        process.setId(id);
+        manager.execute(process);
+        process.succeed("result");
+    }
+}
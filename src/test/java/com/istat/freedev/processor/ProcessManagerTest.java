@@ -0,0 +1,174 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.ProcessListener;
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ProcessManagerTest {
+
+    /**
+     * queue dispatched runnables until {@link #runPending()}. Like an Android handler, its release drop them.
+     */
+    static class QueueDispatcher implements RunnableDispatcher {
+        final List<Runnable> pending = new ArrayList<>();
+
+        @Override
+        public synchronized void dispatch(Runnable runnable, long delay) {
+            pending.add(runnable);
+        }
+
+        @Override
+        public synchronized void cancel(Runnable runnable) {
+            while (pending.remove(runnable)) {
+                //remove every dispatch of it.
+            }
+        }
+
+        @Override
+        public synchronized void release() {
+            pending.clear();
+        }
+
+        void runPending() {
+            while (true) {
+                Runnable runnable;
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    runnable = pending.remove(0);
+                }
+                runnable.run();
+            }
+        }
+    }
+
+    static class CountingCallback extends ProcessPoolTest.Callback {
+        final AtomicInteger successCount = new AtomicInteger(), errorCount = new AtomicInteger(), abortedCount = new AtomicInteger();
+
+        @Override
+        public void onSuccess(String result) {
+            successCount.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Exception error) {
+            errorCount.incrementAndGet();
+        }
+
+        @Override
+        public void onAborted() {
+            abortedCount.incrementAndGet();
+        }
+    }
+
+    final QueueDispatcher dispatcher = new QueueDispatcher();
+    final ProcessManager manager = new ProcessManager("ProcessManagerTest", dispatcher, ExecutionEngine.CALLER_RUNS);
+
+    @Test
+    public void cancelAll_thenReExecuteSameInstance() throws Exception {
+        TestProcess process = new TestProcess();
+        process.setFlags(Process.FLAG_DONT_CLEAR_ON_FINISH);
+        CountingCallback callback = new CountingCallback();
+        process.addCallback(callback);
+        manager.execute(process);
+        //the process lane is scheduled on the dispatcher, the release drop it.
+        manager.cancelAll();
+        dispatcher.runPending();
+        assertEquals(Process.STATE_ABORTED, process.getState());
+        assertEquals(1, callback.abortedCount.get());
+
+        manager.execute(process);
+        process.succeed("result");
+        dispatcher.runPending();
+        assertEquals(Process.STATE_SUCCESS, process.getState());
+        assertEquals(1, callback.successCount.get());
+    }
+
+    @Test
+    public void cancelAll_releasesLanesHeldForADroppedBatchEvent() throws Exception {
+        final AtomicInteger batchCount = new AtomicInteger();
+        manager.registerProcessListener(new ProcessListener() {
+            @Override
+            public void onProcessesEnqueued(List<Process> processes) {
+                batchCount.incrementAndGet();
+            }
+        });
+        TestProcess first = new TestProcess(), second = new TestProcess();
+        CountingCallback firstCallback = new CountingCallback(), secondCallback = new CountingCallback();
+        first.addCallback(firstCallback);
+        second.addCallback(secondCallback);
+        manager.executeAll(Arrays.asList(first, second));
+        //the batch event is pending on the dispatcher, the release drop it.
+        manager.cancelAll();
+        dispatcher.runPending();
+        assertEquals(1, batchCount.get());
+        assertEquals(1, firstCallback.abortedCount.get());
+        assertEquals(1, secondCallback.abortedCount.get());
+    }
+
+    @Test
+    public void execute_reportsIdConflictAsIllegalState() throws Exception {
+        TestProcess running = new TestProcess(), conflicting = new TestProcess();
+        running.setId("conflict");
+        conflicting.setId("conflict");
+        manager.execute(running);
+        try {
+            manager.execute(conflicting);
+            fail("the id conflict has not been reported");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof ProcessManager.ProcessException);
+        }
+        assertSame(running, manager.getProcessById("conflict"));
+        assertFalse(conflicting.isRunning());
+    }
+
+    @Test
+    public void execute_reportsAdmissionRejectionAsIllegalState() throws Exception {
+        manager.setAdmissionController(new AdmissionController(1, 0, AdmissionController.OverflowPolicy.REJECT));
+        manager.execute(new TestProcess());
+        TestProcess rejected = new TestProcess();
+        IllegalStateException reported = null;
+        try {
+            manager.execute(rejected);
+        } catch (IllegalStateException e) {
+            reported = e;
+        }
+        assertNotNull("the admission rejection has not been reported", reported);
+        assertTrue(reported.getCause() instanceof ProcessManager.ProcessException);
+        dispatcher.runPending();
+        assertEquals(Process.STATE_FAILED, rejected.getState());
+        assertSame(reported.getCause(), rejected.getFailCause());
+    }
+
+    @Test
+    public void globalRunningProcessCount_spansEveryManager() throws Exception {
+        ProcessManager other = new ProcessManager("ProcessManagerTest-other", dispatcher, ExecutionEngine.CALLER_RUNS);
+        int initialCount = ProcessManager.getGlobalRunningProcessCount();
+        TestProcess first = new TestProcess(), second = new TestProcess(), third = new TestProcess();
+        manager.execute(first);
+        manager.execute(second);
+        other.execute(third);
+        assertEquals(2, manager.getRunningProcessCount());
+        assertEquals(1, other.getRunningProcessCount());
+        assertEquals(initialCount + 3, ProcessManager.getGlobalRunningProcessCount());
+        first.succeed("result");
+        third.cancel();
+        dispatcher.runPending();
+        assertEquals(1, manager.getRunningProcessCount());
+        assertEquals(0, other.getRunningProcessCount());
+        assertEquals(initialCount + 1, ProcessManager.getGlobalRunningProcessCount());
+        second.succeed("result");
+        dispatcher.runPending();
+        assertEquals(initialCount, ProcessManager.getGlobalRunningProcessCount());
+    }
+}
@@ -0,0 +1,132 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.ProcessCallback;
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ProcessPoolTest {
+
+    static class Callback implements ProcessCallback<String, Exception> {
+        @Override
+        public void onStart() {
+        }
+
+        @Override
+        public void onFinished(int finishState) {
+        }
+
+        @Override
+        public void onSuccess(String result) {
+        }
+
+        @Override
+        public void onError(Exception error) {
+        }
+
+        @Override
+        public void onFail(Throwable e) {
+        }
+
+        @Override
+        public void onAborted() {
+        }
+    }
+
+    /**
+     * run dispatched runnables inline, or on another thread once {@link #deferred} is set. A deferred dispatch wait for
+     * the runnable, then for {@link #resumed}, before returning to the caller.
+     */
+    static class DeferringDispatcher implements RunnableDispatcher {
+        volatile boolean deferred = false;
+        final CountDownLatch resumed = new CountDownLatch(1);
+
+        @Override
+        public void dispatch(Runnable runnable, long delay) {
+            if (!deferred) {
+                runnable.run();
+                return;
+            }
+            Thread thread = new Thread(runnable);
+            thread.start();
+            try {
+                thread.join();
+                resumed.await(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void cancel(Runnable runnable) {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    @Test
+    public void cancel_doesntClearCallbacksOfTheNextUser() throws Exception {
+        final ProcessPool<TestProcess> pool = new ProcessPool<>(new ProcessPool.Factory<TestProcess>() {
+            @Override
+            public TestProcess create() {
+                return new TestProcess();
+            }
+        });
+        DeferringDispatcher dispatcher = new DeferringDispatcher();
+        ProcessManager manager = new ProcessManager("ProcessPoolTest", dispatcher, ExecutionEngine.CALLER_RUNS);
+        final TestProcess process = pool.acquire();
+        manager.execute(process);
+        dispatcher.deferred = true;
+        Thread canceler = new Thread() {
+            @Override
+            public void run() {
+                process.cancel();
+            }
+        };
+        canceler.start();
+        //the abortion is delivered while cancel() is still running: the process must not be reused meanwhile.
+        long deadline = System.currentTimeMillis() + 2000;
+        while (pool.getIdleCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        TestProcess next = pool.acquire();
+        assertSame(process, next);
+        Callback callback = new Callback();
+        next.addCallback(callback);
+        dispatcher.resumed.countDown();
+        canceler.join();
+        assertTrue(Arrays.asList(next.processCallbacks).contains(callback));
+    }
+
+    @Test
+    public void asFuture_failsOnceRecycled() throws Exception {
+        ProcessPool<TestProcess> pool = new ProcessPool<>(new ProcessPool.Factory<TestProcess>() {
+            @Override
+            public TestProcess create() {
+                return new TestProcess();
+            }
+        });
+        ProcessManager manager = new ProcessManager("ProcessPoolTest", new DeferringDispatcher(), ExecutionEngine.CALLER_RUNS);
+        TestProcess process = pool.acquire();
+        manager.execute(process);
+        Future<String> future = process.asFuture();
+        process.succeed("done");
+        assertEquals(1, pool.getIdleCount());
+        try {
+            future.get();
+            fail("the outcome of a recycled process can't be read");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+import com.istat.freedev.processor.utils.ExecutorDispatcher;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ProcessStrandTest {
+    final ExecutorDispatcher dispatcher = new ExecutorDispatcher(4);
+    final ProcessManager manager = new ProcessManager("ProcessStrandTest", dispatcher);
+    final ProcessStrand strand = new ProcessStrand(new TestProcess());
+    //set by a runnable which ran concurrently with another one of the lane.
+    final AtomicInteger overlapCount = new AtomicInteger();
+    final AtomicInteger runningCount = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        dispatcher.release();
+    }
+
+    @Test
+    public void post_runsInPostOrderOneAtATime() throws Exception {
+        final int producerCount = 4, postCount = 5000;
+        final CountDownLatch ran = new CountDownLatch(producerCount * postCount);
+        final int[] lastRun = new int[producerCount];
+        final AtomicInteger disorderCount = new AtomicInteger();
+        Thread[] producers = new Thread[producerCount];
+        for (int p = 0; p < producerCount; p++) {
+            final int producer = p;
+            lastRun[producer] = -1;
+            producers[p] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < postCount; i++) {
+                        final int index = i;
+                        strand.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                enter();
+                                if (lastRun[producer] != index - 1) {
+                                    disorderCount.incrementAndGet();
+                                }
+                                lastRun[producer] = index;
+                                exit();
+                                ran.countDown();
+                            }
+                        }, manager);
+                    }
+                }
+            };
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+        assertEquals(0, disorderCount.get());
+        assertEquals(0, overlapCount.get());
+        assertTrue(strand.pendingRunnables.isEmpty());
+    }
+
+    @Test
+    public void post_reusedNodeIsQueuedOnceAtATime() throws Exception {
+        final int threadCount = 4, attemptCount = 20000;
+        final AtomicInteger claimedCount = new AtomicInteger(), runCount = new AtomicInteger();
+        final ProcessStrand.Node node = new ProcessStrand.Node() {
+            @Override
+            public void run() {
+                enter();
+                runCount.incrementAndGet();
+                exit();
+                unClaim();
+            }
+        };
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < attemptCount; i++) {
+                        if (node.claim()) {
+                            claimedCount.incrementAndGet();
+                            strand.post(node, manager);
+                        }
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (runCount.get() < claimedCount.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(claimedCount.get() > 0);
+        assertEquals(claimedCount.get(), runCount.get());
+        assertEquals(0, overlapCount.get());
+    }
+
+    @Test
+    public void remove_cancelsEveryPendingPostOfTheRunnable() throws Exception {
+        ProcessManager manager = new ProcessManager("ProcessStrandTest", RunnableDispatcher.SIMPLE_RUNNER);
+        final AtomicInteger canceledRunCount = new AtomicInteger(), keptRunCount = new AtomicInteger();
+        Runnable canceled = new Runnable() {
+            @Override
+            public void run() {
+                canceledRunCount.incrementAndGet();
+            }
+        };
+        Runnable kept = new Runnable() {
+            @Override
+            public void run() {
+                keptRunCount.incrementAndGet();
+            }
+        };
+        assertTrue(strand.hold());
+        strand.post(canceled, manager);
+        strand.post(kept, manager);
+        strand.post(canceled, manager);
+        assertTrue(strand.remove(canceled));
+        assertFalse(strand.remove(canceled));
+        //the lane run inline once released.
+        strand.release();
+        assertEquals(0, canceledRunCount.get());
+        assertEquals(1, keptRunCount.get());
+        assertFalse(strand.remove(kept));
+        assertTrue(strand.pendingRunnables.isEmpty());
+    }
+
+    @Test
+    public void remove_racingTheLaneLeavesNothingIndexed() throws Exception {
+        final int postCount = 20000;
+        final AtomicInteger runCount = new AtomicInteger();
+        final Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                runCount.incrementAndGet();
+            }
+        };
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread poster = new Thread() {
+            @Override
+            public void run() {
+                awaitQuietly(start);
+                for (int i = 0; i < postCount; i++) {
+                    strand.post(runnable, manager);
+                }
+            }
+        };
+        Thread remover = new Thread() {
+            @Override
+            public void run() {
+                awaitQuietly(start);
+                for (int i = 0; i < postCount; i++) {
+                    strand.remove(runnable);
+                }
+            }
+        };
+        poster.start();
+        remover.start();
+        start.countDown();
+        poster.join();
+        remover.join();
+        strand.remove(runnable);
+        final CountDownLatch drained = new CountDownLatch(1);
+        strand.post(new Runnable() {
+            @Override
+            public void run() {
+                drained.countDown();
+            }
+        }, manager);
+        assertTrue(drained.await(10, TimeUnit.SECONDS));
+        assertTrue(runCount.get() <= postCount);
+        assertTrue(strand.pendingRunnables.isEmpty());
+    }
+
+    void enter() {
+        if (runningCount.incrementAndGet() != 1) {
+            overlapCount.incrementAndGet();
+        }
+    }
+
+    void exit() {
+        runningCount.decrementAndGet();
+    }
+
+    static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
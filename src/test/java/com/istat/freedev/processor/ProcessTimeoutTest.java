@@ -0,0 +1,77 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+import com.istat.freedev.processor.utils.HashedWheelTimer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ProcessTimeoutTest {
+    final HashedWheelTimer timer = new HashedWheelTimer();
+    final ProcessManager manager = new ProcessManager("ProcessTimeoutTest", RunnableDispatcher.SIMPLE_RUNNER, ExecutionEngine.CALLER_RUNS);
+    final TestProcess process = new TestProcess();
+    final ProcessManagerTest.CountingCallback callback = new ProcessManagerTest.CountingCallback();
+
+    {
+        manager.setTimer(timer);
+        process.addCallback(callback);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void timeout_abortsAStuckProcess() throws Exception {
+        process.setTimeout(50);
+        manager.execute(process);
+        assertTrue(process.await(TimeUnit.SECONDS.toMillis(5)));
+        assertEquals(Process.STATE_ABORTED, process.getState());
+        assertTrue(process.hasTimedOut());
+        //notified after the termination, from the timer task thread.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (callback.abortedCount.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, callback.abortedCount.get());
+    }
+
+    @Test
+    public void defaultTimeout_appliesToProcessWithoutTimeout() throws Exception {
+        manager.setDefaultTimeout(50);
+        manager.execute(process);
+        assertTrue(process.await(TimeUnit.SECONDS.toMillis(5)));
+        assertTrue(process.hasTimedOut());
+    }
+
+    @Test
+    public void finishing_beforeTheDeadlineCancelsIt() throws Exception {
+        process.setTimeout(TimeUnit.MINUTES.toMillis(10));
+        manager.execute(process);
+        HashedWheelTimer.Timeout deadline = process.deadline;
+        assertNotNull(deadline);
+        process.succeed("result");
+        assertTrue(deadline.isCanceled());
+        assertEquals(Process.STATE_SUCCESS, process.getState());
+        assertFalse(process.hasTimedOut());
+        assertEquals(1, callback.successCount.get());
+    }
+
+    @Test
+    public void notCancelableProcess_outlivesItsTimeout() throws Exception {
+        process.setFlags(Process.FLAG_NOT_CANCELABLE);
+        process.setTimeout(20);
+        manager.execute(process);
+        assertFalse(process.await(200));
+        assertTrue(process.isRunning());
+        assertFalse(process.hasTimedOut());
+        process.succeed("result");
+        assertEquals(Process.STATE_SUCCESS, process.getState());
+    }
+}
@@ -0,0 +1,40 @@
+package com.istat.freedev.processor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ProcessVariablesTest {
+
+    @Test
+    public void builder_growsBeyondItsCapacity() throws Exception {
+        ProcessVariables variables = new ProcessVariables.Builder(1)
+                .putInt(1).putLong(2L).putDouble(3.5).putBoolean(true).put("five")
+                .build();
+        assertEquals(5, variables.getCount());
+        assertEquals(1, variables.getInt(0));
+        assertEquals(2L, variables.getLong(1));
+        assertEquals(3.5, variables.getDouble(2), 0);
+        assertTrue(variables.getBoolean(3));
+        assertEquals("five", variables.get(4));
+    }
+
+    @Test
+    public void getInt_parsesAndRangeChecks() throws Exception {
+        ProcessVariables variables = ProcessVariables.of("12", 7L, 5000000000L, "x");
+        assertEquals(12, variables.getInt(0));
+        assertEquals(7, variables.getInt(1));
+        try {
+            variables.getInt(2);
+            fail("long out of the int range");
+        } catch (NumberFormatException e) {
+            //expected
+        }
+        try {
+            variables.getInt(3);
+            fail("not a number");
+        } catch (NumberFormatException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.istat.freedev.processor.PromiseTable.Entry.PHASE_FINISHED;
+import static com.istat.freedev.processor.PromiseTable.Entry.PHASE_RUNNING;
+import static org.junit.Assert.*;
+
+public class PromiseTableTest {
+    final PromiseTable table = new PromiseTable();
+    final AtomicInteger runCount = new AtomicInteger();
+    final Runnable runnable = new Runnable() {
+        @Override
+        public void run() {
+            runCount.incrementAndGet();
+        }
+    };
+
+    @Test
+    public void add_skipsOnlyAlreadyRegisteredStates() {
+        table.add(runnable, Process.STATE_SUCCESS);
+        table.add(runnable, Process.STATE_SUCCESS, Process.STATE_ERROR);
+        table.execute(Process.STATE_ERROR, PHASE_FINISHED);
+        assertEquals(1, runCount.get());
+    }
+
+    @Test
+    public void add_sharesTheEntryOfARunnable() {
+        PromiseTable.Entry entry = table.add(runnable, Process.STATE_SUCCESS);
+        assertSame(entry, table.add(runnable, Process.STATE_FLAG_FINISHED));
+        table.execute(Process.STATE_FLAG_FINISHED, PHASE_FINISHED);
+        table.execute(Process.STATE_SUCCESS, PHASE_FINISHED);
+        assertEquals(1, runCount.get());
+    }
+
+    @Test
+    public void execute_runsOncePerPhase() {
+        table.add(runnable, Process.STATE_STARTED, Process.STATE_FLAG_FINISHED);
+        table.execute(Process.STATE_STARTED, PHASE_RUNNING);
+        table.execute(Process.STATE_STARTED, PHASE_RUNNING);
+        table.execute(Process.STATE_FLAG_FINISHED, PHASE_FINISHED);
+        assertEquals(2, runCount.get());
+        table.resetExecuted();
+        table.execute(Process.STATE_FLAG_FINISHED, PHASE_FINISHED);
+        assertEquals(3, runCount.get());
+    }
+
+    @Test
+    public void remove_dropsEveryStateOfTheRunnable() {
+        table.add(runnable, Process.STATE_SUCCESS, Process.STATE_ERROR, 1000);
+        assertTrue(table.remove(runnable));
+        assertFalse(table.remove(runnable));
+        table.execute(Process.STATE_SUCCESS, PHASE_FINISHED);
+        table.execute(Process.STATE_ERROR, PHASE_FINISHED);
+        table.execute(1000, PHASE_RUNNING);
+        assertEquals(0, runCount.get());
+    }
+
+    @Test
+    public void add_manyPromisesRunOnceInRegistrationOrder() {
+        final int count = 10000;
+        final int[] lastRun = {-1};
+        final AtomicInteger disorderCount = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            table.add(new Runnable() {
+                @Override
+                public void run() {
+                    if (lastRun[0] != index - 1) {
+                        disorderCount.incrementAndGet();
+                    }
+                    lastRun[0] = index;
+                    runCount.incrementAndGet();
+                }
+            }, Process.STATE_SUCCESS, Process.STATE_FLAG_FINISHED);
+        }
+        table.execute(Process.STATE_SUCCESS, PHASE_FINISHED);
+        table.execute(Process.STATE_FLAG_FINISHED, PHASE_FINISHED);
+        assertEquals(count, runCount.get());
+        assertEquals(0, disorderCount.get());
+    }
+
+    @Test
+    public void clear_forgetsRunnableRegisteredForNoOtherState() {
+        PromiseTable.Entry entry = table.add(runnable, Process.STATE_SUCCESS);
+        table.execute(Process.STATE_SUCCESS, PHASE_FINISHED);
+        table.clear(Process.STATE_SUCCESS);
+        assertFalse(table.entries.containsKey(runnable));
+        //registered again, it doesn't inherit the executed flags of the cleared entry.
+        assertNotSame(entry, table.add(runnable, Process.STATE_SUCCESS));
+        table.execute(Process.STATE_SUCCESS, PHASE_FINISHED);
+        assertEquals(2, runCount.get());
+    }
+
+    @Test
+    public void clear_keepsRunnableRegisteredForAnotherState() {
+        PromiseTable.Entry entry = table.add(runnable, Process.STATE_SUCCESS, 1000);
+        table.clear(Process.STATE_SUCCESS);
+        table.execute(Process.STATE_SUCCESS, PHASE_FINISHED);
+        assertEquals(0, runCount.get());
+        assertSame(entry, table.entries.get(runnable));
+        table.clear(1000);
+        assertFalse(table.entries.containsKey(runnable));
+    }
+
+    @Test
+    public void promise_registeredBySeveralCallsRunsOnce() {
+        TestProcess process = new TestProcess();
+        new ProcessManager("PromiseTableTest", RunnableDispatcher.SIMPLE_RUNNER, ExecutionEngine.CALLER_RUNS).execute(process);
+        process.promise(runnable, Process.STATE_SUCCESS);
+        process.promise(runnable, Process.STATE_SUCCESS, Process.STATE_FLAG_FINISHED);
+        process.succeed("done");
+        assertEquals(1, runCount.get());
+    }
+}
@@ -0,0 +1,131 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.PublishCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PublishChannelTest {
+
+    /**
+     * process publishing the values given by the test.
+     */
+    static class PublishingProcess extends TestProcess {
+        boolean emit(Object value) {
+            return publish(value);
+        }
+    }
+
+    /**
+     * record each delivery, a batch being recorded as a whole.
+     */
+    static class Recorder implements PublishCallback<Object> {
+        final List<Object> deliveries = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onPublished(Object value) {
+            deliveries.add(value);
+        }
+    }
+
+    static class BatchRecorder extends Recorder {
+        @Override
+        public void onPublishedBatch(List<Object> values) {
+            //the list is reused once the call return.
+            deliveries.add(new ArrayList<>(values));
+        }
+    }
+
+    final ProcessManagerTest.QueueDispatcher dispatcher = new ProcessManagerTest.QueueDispatcher();
+    final ProcessManager manager = new ProcessManager("PublishChannelTest", dispatcher, ExecutionEngine.CALLER_RUNS);
+    final PublishingProcess process = new PublishingProcess();
+
+    @Test
+    public void conflate_deliversOnlyTheLatestValue() {
+        Recorder recorder = new Recorder();
+        process.addPublishCallback(recorder);
+        manager.execute(process);
+        dispatcher.runPending();
+        assertTrue(process.emit(1));
+        assertTrue(process.emit(2));
+        assertTrue(process.emit(3));
+        dispatcher.runPending();
+        assertEquals(Collections.<Object>singletonList(3), recorder.deliveries);
+    }
+
+    @Test
+    public void batch_deliversEveryValueInASingleCall() {
+        BatchRecorder recorder = new BatchRecorder();
+        process.setPublishMode(Process.PUBLISH_MODE_BATCH, 0);
+        process.addPublishCallback(recorder);
+        manager.execute(process);
+        dispatcher.runPending();
+        process.emit(1);
+        process.emit(2);
+        process.emit(3);
+        dispatcher.runPending();
+        process.emit(4);
+        dispatcher.runPending();
+        assertEquals(Arrays.<Object>asList(Arrays.asList(1, 2, 3), Collections.singletonList(4)), recorder.deliveries);
+    }
+
+    @Test
+    public void batch_defaultsToOneOnPublishedPerValue() {
+        Recorder recorder = new Recorder();
+        process.setPublishMode(Process.PUBLISH_MODE_BATCH, 0);
+        process.addPublishCallback(recorder);
+        manager.execute(process);
+        process.emit(1);
+        process.emit(2);
+        dispatcher.runPending();
+        assertEquals(Arrays.<Object>asList(1, 2), recorder.deliveries);
+    }
+
+    @Test
+    public void publish_deliversPendingValuesBeforeTheTermination() {
+        final List<Object> events = Collections.synchronizedList(new ArrayList<>());
+        process.addPublishCallback(new PublishCallback<Object>() {
+            @Override
+            public void onPublished(Object value) {
+                events.add(value);
+            }
+        });
+        process.addCallback(new ProcessPoolTest.Callback() {
+            @Override
+            public void onSuccess(String result) {
+                events.add(result);
+            }
+        });
+        manager.execute(process);
+        process.emit("progress");
+        process.succeed("result");
+        dispatcher.runPending();
+        assertEquals(Arrays.<Object>asList("progress", "result"), events);
+        assertFalse(process.emit("late"));
+    }
+
+    @Test
+    public void removePublishCallback_stopsTheDelivery() {
+        Recorder recorder = new Recorder();
+        process.addPublishCallback(recorder);
+        assertTrue(process.removePublishCallback(recorder));
+        assertFalse(process.removePublishCallback(recorder));
+        manager.execute(process);
+        process.emit(1);
+        dispatcher.runPending();
+        assertTrue(recorder.deliveries.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void setPublishMode_rejectsRunningProcess() {
+        manager.execute(process);
+        process.setPublishMode(Process.PUBLISH_MODE_BATCH, 0);
+    }
+}
@@ -0,0 +1,117 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    /**
+     * process ending in error on each execution.
+     */
+    static class FailingProcess extends Process<String, Exception> {
+        final AtomicInteger executionCount = new AtomicInteger();
+
+        @Override
+        protected void onExecute(ExecutionVariables executionVariables) {
+            executionCount.incrementAndGet();
+            notifyError(new IOException("error"));
+        }
+    }
+
+    final ProcessManager manager = new ProcessManager("RetryPolicyTest", RunnableDispatcher.SIMPLE_RUNNER, ExecutionEngine.CALLER_RUNS);
+
+    @Test
+    public void getDelay_growsExponentiallyUpToTheMaxDelay() {
+        RetryPolicy policy = new RetryPolicy(10).setBackoff(100, 2, 1000).setJitter(0);
+        assertEquals(100, policy.getDelay(1));
+        assertEquals(200, policy.getDelay(2));
+        assertEquals(400, policy.getDelay(3));
+        assertEquals(800, policy.getDelay(4));
+        assertEquals(1000, policy.getDelay(5));
+        assertEquals(1000, policy.getDelay(9));
+    }
+
+    @Test
+    public void getDelay_jitterRemovesUpToItsPartOfTheDelay() {
+        RetryPolicy policy = new RetryPolicy(10).setBackoff(1000, 2, 10000).setJitter(0.5);
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.getDelay(2);
+            assertTrue("delay=" + delay, delay >= 1000 && delay <= 2000);
+        }
+    }
+
+    @Test
+    public void shouldRetry_stopsAtMaxAttemptsAndUnmatchedCauses() {
+        RetryPolicy policy = new RetryPolicy(3).retryOn(IOException.class);
+        FailingProcess process = new FailingProcess();
+        assertTrue(policy.shouldRetry(process, new IOException(), 1));
+        assertTrue(policy.shouldRetry(process, new IOException(), 2));
+        assertFalse(policy.shouldRetry(process, new IOException(), 3));
+        assertFalse(policy.shouldRetry(process, new IllegalStateException(), 1));
+    }
+
+    @Test
+    public void retry_reExecutesTheProcessUntilMaxAttempts() throws Exception {
+        FailingProcess process = new FailingProcess();
+        process.setRetryPolicy(new RetryPolicy(3).setBackoff(10, 2, 100).setJitter(0));
+        ProcessManagerTest.CountingCallback callback = new ProcessManagerTest.CountingCallback();
+        process.addCallback(callback);
+        manager.execute(process);
+        assertTrue(process.await(TimeUnit.SECONDS.toMillis(5)));
+        assertEquals(Process.STATE_ERROR, process.getState());
+        assertEquals(3, process.executionCount.get());
+        assertEquals(3, process.getAttemptCount());
+        awaitCount(callback.errorCount, 1);
+        assertEquals(1, callback.errorCount.get());
+    }
+
+    @Test
+    public void retryBudget_boundsTheRetriesOfTheManager() throws Exception {
+        RetryBudget budget = new RetryBudget(0, 1);
+        manager.setRetryBudget(budget);
+        FailingProcess first = new FailingProcess(), second = new FailingProcess();
+        first.setRetryPolicy(new RetryPolicy(5).setBackoff(10, 1, 10).setJitter(0));
+        second.setRetryPolicy(new RetryPolicy(5).setBackoff(10, 1, 10).setJitter(0));
+        manager.execute(first);
+        assertTrue(first.await(TimeUnit.SECONDS.toMillis(5)));
+        //a single retry in the budget.
+        assertEquals(2, first.executionCount.get());
+        assertEquals(0, budget.getAvailableRetries());
+        manager.execute(second);
+        assertTrue(second.await(TimeUnit.SECONDS.toMillis(5)));
+        assertEquals(1, second.executionCount.get());
+        assertEquals(Process.STATE_ERROR, second.getState());
+    }
+
+    @Test
+    public void retryBudget_submissionsDepositTheirRatio() {
+        RetryBudget budget = new RetryBudget(0.5, 2);
+        assertTrue(budget.tryAcquireRetry());
+        assertTrue(budget.tryAcquireRetry());
+        assertFalse(budget.tryAcquireRetry());
+        budget.onProcessSubmitted();
+        assertFalse(budget.tryAcquireRetry());
+        budget.onProcessSubmitted();
+        assertTrue(budget.tryAcquireRetry());
+        //the balance never exceed the capacity.
+        for (int i = 0; i < 100; i++) {
+            budget.onProcessSubmitted();
+        }
+        assertEquals(2, budget.getAvailableRetries());
+    }
+
+    static void awaitCount(AtomicInteger count, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (count.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
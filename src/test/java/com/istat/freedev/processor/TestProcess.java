@@ -0,0 +1,23 @@
+package com.istat.freedev.processor;
+
+/**
+ * process which stay running after its execution, until the test terminate it.
+ */
+public class TestProcess extends Process<String, Exception> {
+
+    @Override
+    protected void onExecute(ExecutionVariables executionVariables) {
+    }
+
+    public void succeed(String result) {
+        notifySucceed(result);
+    }
+
+    public void error(Exception error) {
+        notifyError(error);
+    }
+
+    public void fail(Throwable cause) {
+        notifyFailed(cause);
+    }
+}
@@ -0,0 +1,17 @@
+package com.istat.freedev.processor;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.RunnableDispatcher;
+
+/**
+ * create managers running and notifying their process in the calling thread, for tests outside of this package.
+ */
+public final class TestProcessManager {
+
+    private TestProcessManager() {
+    }
+
+    public static ProcessManager newInstance(String nameSpace) {
+        return new ProcessManager(nameSpace, RunnableDispatcher.SIMPLE_RUNNER, ExecutionEngine.CALLER_RUNS);
+    }
+}
@@ -0,0 +1,120 @@
+package com.istat.freedev.processor.utils;
+
+import com.istat.freedev.processor.Process;
+import com.istat.freedev.processor.TestProcess;
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+import com.istat.freedev.processor.interfaces.ProcessListener;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncProcessListenerTest {
+
+    /**
+     * keep drain tasks until {@link #runPending()}, so events pile up in the listener queue.
+     */
+    static class QueueEngine implements ExecutionEngine {
+        final List<Runnable> pending = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            pending.add(task);
+        }
+
+        void runPending() {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    task = pending.remove(0);
+                }
+                task.run();
+            }
+        }
+    }
+
+    final QueueEngine engine = new QueueEngine();
+    final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    final ProcessListener recorder = new ProcessListener() {
+        @Override
+        public void onProcessStarted(Process process, String id) {
+            events.add("started:" + id);
+        }
+
+        @Override
+        public void onProcessFinished(Process process, String id) {
+            events.add("finished:" + id);
+        }
+    };
+    final TestProcess process = new TestProcess();
+
+    @Test
+    public void drop_dropsNewEventsOfAFullQueue() {
+        AsyncProcessListener listener = new AsyncProcessListener(recorder, 2, AsyncProcessListener.OverflowPolicy.DROP, engine);
+        listener.onProcessStarted(process, "p1");
+        listener.onProcessStarted(process, "p2");
+        listener.onProcessStarted(process, "p3");
+        assertEquals(1, listener.getDroppedCount());
+        assertEquals(2, listener.getPendingCount());
+        assertTrue(events.isEmpty());
+        engine.runPending();
+        assertEquals(Arrays.asList("started:p1", "started:p2"), events);
+    }
+
+    @Test
+    public void conflate_replacesThePendingEventOfTheSameProcess() {
+        AsyncProcessListener listener = new AsyncProcessListener(recorder, 1, AsyncProcessListener.OverflowPolicy.CONFLATE, engine);
+        listener.onProcessStarted(process, "p1");
+        listener.onProcessFinished(process, "p1");
+        //no pending event of p2 to replace.
+        listener.onProcessStarted(process, "p2");
+        assertEquals(1, listener.getConflatedCount());
+        assertEquals(1, listener.getDroppedCount());
+        engine.runPending();
+        assertEquals(Collections.singletonList("finished:p1"), events);
+    }
+
+    @Test
+    public void block_waitsForRoomInTheQueue() throws Exception {
+        final AsyncProcessListener listener = new AsyncProcessListener(recorder, 1, AsyncProcessListener.OverflowPolicy.BLOCK, engine);
+        listener.setBlockTimeout(TimeUnit.SECONDS.toMillis(10));
+        listener.onProcessStarted(process, "p1");
+        final CountDownLatch offered = new CountDownLatch(1);
+        Thread notifier = new Thread() {
+            @Override
+            public void run() {
+                listener.onProcessFinished(process, "p1");
+                offered.countDown();
+            }
+        };
+        notifier.start();
+        assertFalse(offered.await(100, TimeUnit.MILLISECONDS));
+        engine.runPending();
+        assertTrue(offered.await(5, TimeUnit.SECONDS));
+        notifier.join();
+        engine.runPending();
+        assertEquals(0, listener.getDroppedCount());
+        assertEquals(Arrays.asList("started:p1", "finished:p1"), events);
+    }
+
+    @Test
+    public void block_dropsTheEventOnTimeout() {
+        AsyncProcessListener listener = new AsyncProcessListener(recorder, 1, AsyncProcessListener.OverflowPolicy.BLOCK, engine);
+        listener.setBlockTimeout(50);
+        listener.onProcessStarted(process, "p1");
+        listener.onProcessFinished(process, "p1");
+        assertEquals(1, listener.getDroppedCount());
+        engine.runPending();
+        assertEquals(Collections.singletonList("started:p1"), events);
+    }
+}
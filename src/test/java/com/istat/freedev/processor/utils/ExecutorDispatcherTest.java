@@ -0,0 +1,52 @@
+package com.istat.freedev.processor.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ExecutorDispatcherTest {
+    final ExecutorDispatcher dispatcher = new ExecutorDispatcher(1);
+    final Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+
+    @After
+    public void tearDown() {
+        dispatcher.release();
+        Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+    }
+
+    @Test
+    public void dispatch_reportsThrownErrorToTheThreadHandler() throws Exception {
+        final AtomicReference<Throwable> reported = new AtomicReference<>();
+        final CountDownLatch reportedLatch = new CountDownLatch(1);
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable e) {
+                reported.set(e);
+                reportedLatch.countDown();
+            }
+        });
+        final Error error = new AssertionError("dispatched");
+        dispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                throw error;
+            }
+        }, 0);
+        assertTrue(reportedLatch.await(5, TimeUnit.SECONDS));
+        assertSame(error, reported.get());
+        //the worker is kept: later runnables still run.
+        final CountDownLatch ran = new CountDownLatch(1);
+        dispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        }, 0);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+}
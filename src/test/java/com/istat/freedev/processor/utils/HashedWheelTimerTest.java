@@ -0,0 +1,166 @@
+package com.istat.freedev.processor.utils;
+
+import com.istat.freedev.processor.interfaces.ExecutionEngine;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class HashedWheelTimerTest {
+    final HashedWheelTimer timer = new HashedWheelTimer();
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void schedule_expiresAfterDelay() throws Exception {
+        final CountDownLatch expired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                expired.countDown();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void cancel_preventsExpiration() throws Exception {
+        final AtomicInteger runCount = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runCount.incrementAndGet();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        Thread.sleep(200);
+        assertEquals(0, runCount.get());
+        assertTrue(timeout.isCanceled());
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    public void schedule_manyTimeoutsExpireOnce() throws Exception {
+        int count = 10000;
+        final AtomicInteger runCount = new AtomicInteger();
+        HashedWheelTimer.Timeout[] timeouts = new HashedWheelTimer.Timeout[count];
+        for (int i = 0; i < count; i++) {
+            timeouts[i] = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    runCount.incrementAndGet();
+                }
+            }, i % 300, TimeUnit.MILLISECONDS);
+        }
+        //the shortest timeouts may expire before being canceled, each one either run or is canceled.
+        int canceledCount = 0;
+        for (int i = 1; i < count; i += 2) {
+            if (timeouts[i].cancel()) {
+                canceledCount++;
+            }
+        }
+        int expectedCount = count - canceledCount;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (runCount.get() < expectedCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(expectedCount, runCount.get());
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    public void expiredTask_doesntRunOnTimerThread() throws Exception {
+        final AtomicReference<Thread> taskThread = new AtomicReference<>();
+        final CountDownLatch expired = new CountDownLatch(1);
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                taskThread.set(Thread.currentThread());
+                expired.countDown();
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertNotEquals(timer.name, taskThread.get().getName());
+    }
+
+    @Test
+    public void slowTask_doesntDelayOtherTimeouts() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch expired = new CountDownLatch(1);
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        //occupy every task thread of the timer.
+        for (int i = 0; i < threadCount; i++) {
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, 10, TimeUnit.MILLISECONDS);
+        }
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                expired.countDown();
+            }
+        }, 30, TimeUnit.MILLISECONDS);
+        try {
+            assertTrue(expired.await(2, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void slowTasks_growTaskThreadsUpToTheMaximum() throws Exception {
+        final int maxThreadCount = 2, taskCount = 6;
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 512, maxThreadCount);
+        final CountDownLatch release = new CountDownLatch(1), ran = new CountDownLatch(taskCount);
+        try {
+            for (int i = 0; i < taskCount; i++) {
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        ran.countDown();
+                    }
+                }, 0, TimeUnit.MILLISECONDS);
+            }
+            //ticks keep adjusting the pool while the tasks wait.
+            Thread.sleep(200);
+            assertEquals(maxThreadCount, timer.taskExecutor.getLargestPoolSize());
+            release.countDown();
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            timer.stop();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsCallerRunsEngine() {
+        new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 512, ExecutionEngine.CALLER_RUNS);
+    }
+}
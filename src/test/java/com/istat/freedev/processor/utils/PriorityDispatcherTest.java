@@ -0,0 +1,112 @@
+package com.istat.freedev.processor.utils;
+
+import com.istat.freedev.processor.Process;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class PriorityDispatcherTest {
+    final List<String> runOrder = Collections.synchronizedList(new ArrayList<String>());
+    final Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+    PriorityDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutDown();
+        }
+        Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+    }
+
+    @Test
+    public void dispatch_runsHigherPriorityFirst() throws Exception {
+        //aging can't reorder them within the test.
+        dispatcher = new PriorityDispatcher(1, TimeUnit.MINUTES.toMillis(10));
+        CountDownLatch blocked = block();
+        CountDownLatch ran = new CountDownLatch(3);
+        dispatcher.dispatch(record("low", ran), 0, Process.PRIORITY_LOW);
+        dispatcher.dispatch(record("normal", ran), 0, Process.PRIORITY_NORMAL);
+        dispatcher.dispatch(record("high", ran), 0, Process.PRIORITY_HIGH);
+        blocked.countDown();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("high", "normal", "low"), runOrder);
+    }
+
+    @Test
+    public void dispatch_agedLowPriorityGoesBeforeFreshHighPriority() throws Exception {
+        long agingInterval = 20;
+        dispatcher = new PriorityDispatcher(1, agingInterval);
+        CountDownLatch blocked = block();
+        CountDownLatch ran = new CountDownLatch(2);
+        dispatcher.dispatch(record("low", ran), 0, Process.PRIORITY_LOW);
+        //waiting more than the 2 levels between them.
+        Thread.sleep(agingInterval * 5);
+        dispatcher.dispatch(record("high", ran), 0, Process.PRIORITY_HIGH);
+        blocked.countDown();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("low", "high"), runOrder);
+    }
+
+    @Test
+    public void worker_survivesThrownError() throws Exception {
+        dispatcher = new PriorityDispatcher(1);
+        final AtomicReference<Throwable> reported = new AtomicReference<>();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable e) {
+                reported.set(e);
+            }
+        });
+        final Error error = new AssertionError("dispatched");
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw error;
+            }
+        });
+        CountDownLatch ran = new CountDownLatch(1);
+        dispatcher.execute(record("next", ran));
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertSame(error, reported.get());
+    }
+
+    /**
+     * occupy the single worker until the returned latch is counted down, so next dispatches wait together.
+     */
+    CountDownLatch block() throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1), started = new CountDownLatch(1);
+        dispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 0, Process.PRIORITY_HIGH);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return blocked;
+    }
+
+    Runnable record(final String name, final CountDownLatch ran) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                runOrder.add(name);
+                ran.countDown();
+            }
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package com.istat.freedev.processor.utils;
+
+import com.istat.freedev.processor.ProcessManager;
+import com.istat.freedev.processor.TestProcess;
+import com.istat.freedev.processor.TestProcessManager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProcessFlowTest {
+
+    /**
+     * record the signals received, and keep its subscription to request items.
+     */
+    static class RecordingSubscriber<T> implements ProcessFlow.Subscriber<T> {
+        final List<T> items = new ArrayList<>();
+        ProcessFlow.Subscription subscription;
+        Throwable error;
+        int completeCount;
+
+        @Override
+        public void onSubscribe(ProcessFlow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completeCount++;
+        }
+    }
+
+    /**
+     * subscription fed by the test, without source.
+     */
+    static class TestSubscription extends ProcessFlow.BufferedSubscription<Integer> {
+        int stopCount;
+
+        TestSubscription(ProcessFlow.Subscriber<? super Integer> subscriber, int capacity) {
+            super(subscriber, capacity);
+        }
+
+        @Override
+        void start() {
+        }
+
+        @Override
+        void stop() {
+            stopCount++;
+        }
+    }
+
+    /**
+     * process publishing the values given by the test.
+     */
+    static class PublishingProcess extends TestProcess {
+        void emit(Object value) {
+            publish(value);
+        }
+    }
+
+    final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+
+    @Test
+    public void request_deliversOnlyTheRequestedItems() {
+        TestSubscription subscription = new TestSubscription(subscriber, ProcessFlow.DEFAULT_CAPACITY);
+        subscription.emit(1);
+        subscription.emit(2);
+        subscription.emit(3);
+        assertTrue(subscriber.items.isEmpty());
+        subscription.request(2);
+        assertEquals(Arrays.asList(1, 2), subscriber.items);
+        subscription.request(2);
+        assertEquals(Arrays.asList(1, 2, 3), subscriber.items);
+        //the remaining demand is served on emission.
+        subscription.emit(4);
+        subscription.emit(5);
+        assertEquals(Arrays.asList(1, 2, 3, 4), subscriber.items);
+        assertEquals(0, ProcessFlow.getDroppedCount(subscription));
+    }
+
+    @Test
+    public void boundedCapacity_dropsTheOldestItems() {
+        TestSubscription subscription = new TestSubscription(subscriber, 2);
+        for (int i = 1; i <= 5; i++) {
+            subscription.emit(i);
+        }
+        assertEquals(3, ProcessFlow.getDroppedCount(subscription));
+        subscription.request(Long.MAX_VALUE);
+        assertEquals(Arrays.asList(4, 5), subscriber.items);
+    }
+
+    @Test
+    public void unboundedCapacity_dropsNothing() {
+        TestSubscription subscription = new TestSubscription(subscriber, ProcessFlow.UNBOUNDED);
+        for (int i = 0; i < 1000; i++) {
+            subscription.emit(i);
+        }
+        subscription.request(Long.MAX_VALUE);
+        assertEquals(1000, subscriber.items.size());
+        assertEquals(0, ProcessFlow.getDroppedCount(subscription));
+    }
+
+    @Test
+    public void complete_isSignaledOnceBufferedItemsAreDelivered() {
+        TestSubscription subscription = new TestSubscription(subscriber, ProcessFlow.DEFAULT_CAPACITY);
+        subscription.emit(1);
+        subscription.complete();
+        assertEquals(0, subscriber.completeCount);
+        subscription.request(1);
+        assertEquals(Arrays.asList(1), subscriber.items);
+        assertEquals(1, subscriber.completeCount);
+        assertEquals(1, subscription.stopCount);
+    }
+
+    @Test
+    public void request_failsOnNonPositiveDemand() {
+        TestSubscription subscription = new TestSubscription(subscriber, ProcessFlow.DEFAULT_CAPACITY);
+        subscription.emit(1);
+        subscription.request(0);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertTrue(subscriber.items.isEmpty());
+    }
+
+    @Test
+    public void emissions_deliverPublishedValuesThenComplete() {
+        ProcessManager manager = TestProcessManager.newInstance("ProcessFlowTest");
+        PublishingProcess process = new PublishingProcess();
+        RecordingSubscriber<Object> subscriber = new RecordingSubscriber<>();
+        ProcessFlow.emissions(process, ProcessFlow.UNBOUNDED).subscribe(subscriber);
+        manager.execute(process);
+        process.emit("first");
+        process.emit("second");
+        process.succeed("result");
+        assertTrue(subscriber.items.isEmpty());
+        assertEquals(0, subscriber.completeCount);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(Arrays.<Object>asList("first", "second"), subscriber.items);
+        assertEquals(1, subscriber.completeCount);
+    }
+
+    @Test
+    public void events_cancelUnregistersTheListener() {
+        ProcessManager manager = TestProcessManager.newInstance("ProcessFlowTest");
+        RecordingSubscriber<ProcessFlow.Event> subscriber = new RecordingSubscriber<>();
+        ProcessFlow.events(manager).subscribe(subscriber);
+        ProcessFlow.ManagerSubscription subscription = (ProcessFlow.ManagerSubscription) subscriber.subscription;
+        assertTrue(manager.isProcessListenerRegistered(subscription));
+        TestProcess process = new TestProcess();
+        manager.execute(process);
+        process.succeed("result");
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertFalse(subscriber.items.isEmpty());
+        assertEquals(ProcessFlow.Event.TYPE_FINISHED, subscriber.items.get(subscriber.items.size() - 1).type);
+        subscriber.subscription.cancel();
+        assertFalse(manager.isProcessListenerRegistered(subscription));
+    }
+
+    @Test
+    public void events_cancelAfterTheManagerReleaseIsSilent() {
+        ProcessManager manager = TestProcessManager.newInstance("ProcessFlowTest");
+        RecordingSubscriber<ProcessFlow.Event> subscriber = new RecordingSubscriber<>();
+        ProcessFlow.events(manager).subscribe(subscriber);
+        manager.release();
+        assertFalse(manager.isProcessListenerRegistered((ProcessFlow.ManagerSubscription) subscriber.subscription));
+        subscriber.subscription.cancel();
+        assertNull(subscriber.error);
+    }
+}
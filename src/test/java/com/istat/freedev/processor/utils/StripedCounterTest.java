@@ -0,0 +1,41 @@
+package com.istat.freedev.processor.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StripedCounterTest {
+
+    @Test
+    public void concurrentUpdates_sumExactly() throws Exception {
+        final int threadCount = 8, updateCount = 100000;
+        final StripedCounter counter = new StripedCounter(4);
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < updateCount; i++) {
+                        counter.increment();
+                        counter.add(2);
+                        counter.decrement();
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(2L * threadCount * updateCount, counter.sum());
+    }
+
+    @Test
+    public void intValue_saturates() {
+        StripedCounter counter = new StripedCounter(1);
+        counter.add(Integer.MAX_VALUE + 10L);
+        assertEquals(Integer.MAX_VALUE, counter.intValue());
+    }
+}